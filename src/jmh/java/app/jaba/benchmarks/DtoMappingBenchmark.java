@@ -0,0 +1,41 @@
+package app.jaba.benchmarks;
+
+import app.jaba.dtos.UserDto;
+import app.jaba.entities.UserEntity;
+import app.jaba.mappers.UserMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MapStruct conversions every request goes through, between {@link UserDto} and {@link UserEntity}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    UserMapper userMapper;
+    UserDto userDto;
+    UserEntity userEntity;
+
+    @Setup
+    public void setUp() {
+        userMapper = Fixtures.userMapper();
+        userDto = Fixtures.userDto(1);
+        userEntity = Fixtures.user(1);
+    }
+
+    @Benchmark
+    public UserEntity dtoToEntity() {
+        return userMapper.map(userDto);
+    }
+
+    @Benchmark
+    public UserDto entityToDto() {
+        return userMapper.map(userEntity);
+    }
+}
@@ -0,0 +1,61 @@
+package app.jaba.benchmarks;
+
+import app.jaba.validators.EmailValidator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * {@link EmailValidator} against the regular expression it replaced, compiled on every call as before and once.
+ * Both accept the same emails, which {@code EmailValidatorTest} checks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailValidatorBenchmark {
+
+    private static final String REGEX = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$";
+    private static final Pattern PATTERN = Pattern.compile(REGEX);
+
+    private static final List<String> EDGE_CASES = List.of(
+            "roberto.carlos@jaba.com", "ROBERTO+tag@Jaba.COM", "a@b.co", "a%b_c-d@sub.domain.example.museum",
+            "", "@", "a@", "@b.co", "a@b", "a@b.", "a@.co", "a@b.c", "a@b.comcomc", "a@b.c0m", "a@@b.co",
+            "a@b@c.co", "a b@c.co", "a@b_c.co", "a@b.co ", " a@b.co", "a@b..co", "a@-.co", "a@..co", "a@b.co.",
+            "a@b.co.uk", "a@1.2.3.abc", "é@b.co", "a@b.çom", "a@b.co\n", "a.@b.co", ".@..ab", "a@b.-co");
+
+    EmailValidator emailValidator;
+    List<String> emails;
+
+    @Setup
+    public void setUp() {
+        emailValidator = new EmailValidator();
+        emails = EDGE_CASES;
+    }
+
+    @Benchmark
+    public void stringMatches(Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(email.matches(REGEX));
+        }
+    }
+
+    @Benchmark
+    public void precompiledPattern(Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(PATTERN.matcher(email).matches());
+        }
+    }
+
+    @Benchmark
+    public void emailValidator(Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(emailValidator.isValid(email));
+        }
+    }
+}
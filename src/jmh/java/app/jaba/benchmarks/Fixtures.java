@@ -0,0 +1,59 @@
+package app.jaba.benchmarks;
+
+import app.jaba.dtos.AddressDto;
+import app.jaba.dtos.UserDto;
+import app.jaba.entities.AddressEntity;
+import app.jaba.entities.UserEntity;
+import app.jaba.mappers.AddressMapperImpl;
+import app.jaba.mappers.UserMapper;
+import app.jaba.mappers.UserMapperImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Sample data and hand-wired beans shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static UserMapper userMapper() {
+        var userMapper = new UserMapperImpl();
+        ReflectionTestUtils.setField(userMapper, "addressMapper", new AddressMapperImpl());
+        return userMapper;
+    }
+
+    static UserEntity user(int index) {
+        var user = new UserEntity();
+        user.setId(UUID.randomUUID());
+        user.setName("Roberto Carlos " + index);
+        user.setLogin("roberto.carlos." + index);
+        user.setEmail("roberto.carlos." + index + "@jaba.com");
+        user.setPassword("password" + index);
+        user.setLastUpdate(LocalDateTime.now());
+        user.setAddress(AddressEntity.builder()
+                .id(UUID.randomUUID())
+                .street("Rua das Flores")
+                .city("Rio de Janeiro")
+                .state("RJ")
+                .zip("50712-432")
+                .number(String.valueOf(index))
+                .userId(user.getId())
+                .build());
+        return user;
+    }
+
+    static UserDto userDto(int index) {
+        return new UserDto(
+                UUID.randomUUID().toString(),
+                "Roberto Carlos " + index,
+                "roberto.carlos." + index,
+                "roberto.carlos." + index + "@jaba.com",
+                "password" + index,
+                new AddressDto(UUID.randomUUID(), "Rua das Flores", "Rio de Janeiro", "RJ", "50712-432", String.valueOf(index)),
+                LocalDateTime.now());
+    }
+}
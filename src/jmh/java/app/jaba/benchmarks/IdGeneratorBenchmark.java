@@ -0,0 +1,35 @@
+package app.jaba.benchmarks;
+
+import app.jaba.generators.RandomUuidIdGenerator;
+import app.jaba.generators.UuidV7IdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of generating a primary key, random against time-ordered, from several threads at once since
+ * the UUIDv7 generator shares its clock state between threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class IdGeneratorBenchmark {
+
+    RandomUuidIdGenerator randomUuid = new RandomUuidIdGenerator();
+    UuidV7IdGenerator uuidV7 = new UuidV7IdGenerator();
+
+    @Benchmark
+    public UUID randomUuid() {
+        return randomUuid.generate();
+    }
+
+    @Benchmark
+    public UUID uuidV7() {
+        return uuidV7.generate();
+    }
+}
@@ -0,0 +1,50 @@
+package app.jaba.benchmarks;
+
+import app.jaba.passwords.PasswordHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passwords hashed and checked per second at each bcrypt cost, through the bounded pool the service uses,
+ * with more callers than pool threads as under load. Each step of the cost halves the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 4)
+@Fork(1)
+@Threads(8)
+public class PasswordHashingBenchmark {
+
+    @Param({"4", "8", "10", "12"})
+    int strength;
+
+    PasswordHasher passwordHasher;
+    String hash;
+
+    @Setup
+    public void setUp() {
+        passwordHasher = new PasswordHasher(strength, 0, 256, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        passwordHasher.start();
+        hash = passwordHasher.hash("correct horse battery staple");
+    }
+
+    @TearDown
+    public void tearDown() {
+        passwordHasher.stop();
+    }
+
+    @Benchmark
+    public String hash() {
+        return passwordHasher.hash("correct horse battery staple");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordHasher.matches("correct horse battery staple", hash);
+    }
+}
@@ -0,0 +1,131 @@
+package app.jaba.benchmarks;
+
+import app.jaba.entities.AddressEntity;
+import app.jaba.entities.UserEntity;
+import app.jaba.mappers.AddressMapper;
+import app.jaba.mappers.AddressMapperImpl;
+import app.jaba.mappers.UserMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps the rows of the users and addresses join, aliased as in UserJdbcRepositoryImpl, with
+ * {@link UserMapper#rowMapper()} and {@link AddressMapper#rowMapper()}, which find their columns once per
+ * result set, against reading every column by label on every row as the mappers used to.
+ * The rows come from an in-memory H2 database and are read again on each invocation, so only the mapping is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSetMappingBenchmark {
+
+    private static final String SELECT_USER_WITH_ADDRESS = """
+            SELECT u.id AS user_id, u.name AS user_name, u.login AS user_login, u.email AS user_email, u.password AS user_password, u.last_update AS user_last_update,
+                   a.id AS address_id, a.street AS address_street, a.city AS address_city, a.state AS address_state, a.zip AS address_zip, a.number AS address_number
+            FROM users u
+            LEFT JOIN addresses a ON u.id = a.user_id
+            """;
+
+    @Param({"1", "1000", "10000"})
+    int rows;
+
+    UserMapper userMapper;
+    AddressMapper addressMapper;
+    Connection connection;
+    ResultSet resultSet;
+
+    @Setup
+    public void setUp() throws SQLException {
+        userMapper = Fixtures.userMapper();
+        addressMapper = new AddressMapperImpl();
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:mapping-" + rows);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE users (id UUID PRIMARY KEY, name VARCHAR(255), login VARCHAR(255), email VARCHAR(255),
+                                        password VARCHAR(255), last_update TIMESTAMP)""");
+            statement.execute("""
+                    CREATE TABLE addresses (id UUID PRIMARY KEY, street VARCHAR(255), city VARCHAR(255), state VARCHAR(255),
+                                            zip VARCHAR(255), number VARCHAR(255), user_id UUID)""");
+        }
+        try (PreparedStatement users = connection.prepareStatement("INSERT INTO users VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement addresses = connection.prepareStatement("INSERT INTO addresses VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                UUID userId = UUID.randomUUID();
+                users.setObject(1, userId);
+                users.setString(2, "Roberto Carlos " + i);
+                users.setString(3, "roberto.carlos." + i);
+                users.setString(4, "roberto.carlos." + i + "@jaba.com");
+                users.setString(5, "password" + i);
+                users.setObject(6, LocalDateTime.now());
+                users.executeUpdate();
+
+                addresses.setObject(1, UUID.randomUUID());
+                addresses.setString(2, "Rua das Flores");
+                addresses.setString(3, "Rio de Janeiro");
+                addresses.setString(4, "RJ");
+                addresses.setString(5, "50712-432");
+                addresses.setString(6, String.valueOf(i));
+                addresses.setObject(7, userId);
+                addresses.executeUpdate();
+            }
+        }
+
+        resultSet = connection
+                .createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)
+                .executeQuery(SELECT_USER_WITH_ADDRESS);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void labelLookup(Blackhole blackhole) throws SQLException {
+        resultSet.beforeFirst();
+        while (resultSet.next()) {
+            UserEntity user = new UserEntity();
+            user.setId(resultSet.getObject("user_id", UUID.class));
+            user.setName(resultSet.getString("user_name"));
+            user.setLogin(resultSet.getString("user_login"));
+            user.setEmail(resultSet.getString("user_email"));
+            user.setPassword(resultSet.getString("user_password"));
+            user.setLastUpdate(resultSet.getObject("user_last_update", LocalDateTime.class));
+            var addressId = resultSet.getObject("address_id", UUID.class);
+            if (addressId != null) {
+                AddressEntity address = new AddressEntity();
+                address.setId(addressId);
+                address.setStreet(resultSet.getString("address_street"));
+                address.setCity(resultSet.getString("address_city"));
+                address.setState(resultSet.getString("address_state"));
+                address.setZip(resultSet.getString("address_zip"));
+                address.setNumber(resultSet.getString("address_number"));
+                user.setAddress(address);
+            }
+            blackhole.consume(user);
+        }
+    }
+
+    @Benchmark
+    public void indexedRowMapper(Blackhole blackhole) throws SQLException {
+        // New mappers on each invocation, as each query takes its own, so finding the columns is measured too.
+        RowMapper<UserEntity> users = userMapper.rowMapper();
+        RowMapper<AddressEntity> addresses = addressMapper.rowMapper();
+        resultSet.beforeFirst();
+        while (resultSet.next()) {
+            UserEntity user = users.mapRow(resultSet, resultSet.getRow());
+            user.setAddress(addresses.mapRow(resultSet, resultSet.getRow()));
+            blackhole.consume(user);
+        }
+    }
+}
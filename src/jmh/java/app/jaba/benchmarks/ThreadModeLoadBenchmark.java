@@ -0,0 +1,76 @@
+package app.jaba.benchmarks;
+
+import app.jaba.App;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the application with many more concurrent requests than it has connections, once serving them on the
+ * platform-thread pool of Tomcat and once on virtual threads, to compare their latency percentiles (p0.99 in the
+ * results). Each request reads the first page of users, so every one of them needs a connection and the callers
+ * beyond {@code DATABASE_MAX_CONCURRENCY} queue: on the Tomcat pool on platform threads, on the limiter on virtual
+ * threads.
+ * <p>
+ * Starts the application against the Postgres database given by {@code BENCHMARK_DATABASE_URL} (the Docker Compose
+ * one by default), on a random port and without the management server, and stops it after each mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Threads(400)
+@Fork(1)
+public class ThreadModeLoadBenchmark {
+
+    @Param({"false", "true"})
+    boolean virtualThreads;
+
+    ConfigurableApplicationContext context;
+    HttpClient httpClient;
+    HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        String url = System.getenv().getOrDefault("BENCHMARK_DATABASE_URL", "jdbc:postgresql://localhost:5432/jaba?user=user");
+        context = new SpringApplicationBuilder(App.class)
+                .properties(
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.datasource.url=" + url,
+                        "spring.flyway.url=" + url,
+                        "server.port=0",
+                        "management.server.port=-1",
+                        "logging.level.root=WARN")
+                .run();
+        int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/users?size=20"))
+                .GET()
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int firstPageOfUsers() throws IOException, InterruptedException {
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + request.uri() + " answered " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
@@ -0,0 +1,118 @@
+package app.jaba.benchmarks;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserImportRowEntity;
+import app.jaba.generators.IdGenerator;
+import app.jaba.generators.UuidV7IdGenerator;
+import app.jaba.mappers.AddressMapperImpl;
+import app.jaba.repositories.AddressJdbcRepositoryImpl;
+import app.jaba.repositories.AddressRepository;
+import app.jaba.repositories.UserChangeNotifier;
+import app.jaba.repositories.UserImportJdbcRepositoryImpl;
+import app.jaba.repositories.UserImportRepository;
+import app.jaba.repositories.UserJdbcRepositoryImpl;
+import app.jaba.repositories.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Loads the same users, with their addresses, into Postgres in two ways: the COPY import of UserImportService
+ * (a staging table filled with COPY, then merged with one statement), and UserJdbcRepositoryImpl.save followed by
+ * AddressJdbcRepositoryImpl.save for each user, as a single create does. Validation and password hashing are the
+ * same on both paths and left out, so that only the way the rows reach the database is compared.
+ * <p>
+ * Needs a Postgres database with the schema of the application, given by {@code BENCHMARK_DATABASE_URL} (the Docker
+ * Compose one by default). Each invocation runs in a transaction that is rolled back, leaving users as it was.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserImportBenchmark {
+
+    @Param({"1000", "10000"})
+    int users;
+
+    SingleConnectionDataSource dataSource;
+    TransactionTemplate transactionTemplate;
+    UserImportRepository userImportRepository;
+    UserRepository userRepository;
+    AddressRepository addressRepository;
+    List<UserEntity> input;
+
+    @Setup
+    public void setUp() {
+        String url = System.getenv().getOrDefault("BENCHMARK_DATABASE_URL", "jdbc:postgresql://localhost:5432/jaba?user=user");
+        dataSource = new SingleConnectionDataSource(url, true);
+        var jdbcClient = JdbcClient.create(dataSource);
+        IdGenerator idGenerator = new UuidV7IdGenerator();
+        var userChangeNotifier = new UserChangeNotifier(jdbcClient);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        userImportRepository = new UserImportJdbcRepositoryImpl(jdbcClient, dataSource, idGenerator);
+        userRepository = new UserJdbcRepositoryImpl(jdbcClient, new JdbcTemplate(dataSource), userChangeNotifier,
+                idGenerator, Fixtures.userMapper(), new AddressMapperImpl());
+        addressRepository = new AddressJdbcRepositoryImpl(jdbcClient, idGenerator);
+
+        // Logins and emails of their own, so that the users already in the table never conflict with them.
+        String prefix = "import.benchmark." + UUID.randomUUID() + ".";
+        input = IntStream.range(0, users)
+                .mapToObj(i -> {
+                    var user = Fixtures.user(i);
+                    user.setLogin(prefix + i);
+                    user.setEmail(prefix + i + "@jaba.com");
+                    return user;
+                })
+                .toList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public long copyAndMerge() {
+        return inRolledBackTransaction(() -> {
+            var line = new AtomicLong();
+            userImportRepository.createStagingTable();
+            userImportRepository.copyToStagingTable(input.stream()
+                    .map(user -> new UserImportRowEntity(line.incrementAndGet(), user)));
+            return userImportRepository.mergeStagingTable();
+        });
+    }
+
+    @Benchmark
+    public long saveEach() {
+        return inRolledBackTransaction(() -> {
+            long saved = 0;
+            for (UserEntity user : input) {
+                var savedUser = userRepository.save(user).orElseThrow();
+                var address = user.getAddress();
+                address.setUserId(savedUser.getId());
+                addressRepository.save(address).orElseThrow();
+                saved++;
+            }
+            return saved;
+        });
+    }
+
+    private long inRolledBackTransaction(LongSupplier load) {
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return load.getAsLong();
+        });
+    }
+}
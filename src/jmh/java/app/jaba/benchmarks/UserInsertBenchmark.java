@@ -0,0 +1,97 @@
+package app.jaba.benchmarks;
+
+import app.jaba.generators.IdGenerator;
+import app.jaba.generators.RandomUuidIdGenerator;
+import app.jaba.generators.UuidV7IdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts users into a Postgres table that already holds a million of them, with random (version 4) against
+ * time-ordered (version 7) primary keys. Each operation is one row; rows go in batches of {@value #BATCH_SIZE}
+ * through a single statement, as batch creation does.
+ * <p>
+ * Needs a Postgres database, given by {@code BENCHMARK_DATABASE_URL} (the Docker Compose one by default).
+ * The rows go in a table of their own, created with the same indexes as users and dropped afterwards.
+ * The size of the primary key index is logged at the end of each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@OperationsPerInvocation(UserInsertBenchmark.BATCH_SIZE)
+@Slf4j
+public class UserInsertBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+    private static final String TABLE = "users_insert_benchmark";
+
+    @Param({"random", "uuid-v7"})
+    String generator;
+
+    @Param({"1000000"})
+    int rows;
+
+    SingleConnectionDataSource dataSource;
+    JdbcClient jdbcClient;
+    IdGenerator idGenerator;
+    long inserted;
+
+    @Setup
+    public void setUp() {
+        String url = System.getenv().getOrDefault("BENCHMARK_DATABASE_URL", "jdbc:postgresql://localhost:5432/jaba?user=user");
+        dataSource = new SingleConnectionDataSource(url, true);
+        jdbcClient = JdbcClient.create(dataSource);
+        idGenerator = "random".equals(generator) ? new RandomUuidIdGenerator() : new UuidV7IdGenerator();
+
+        jdbcClient.sql("DROP TABLE IF EXISTS " + TABLE).update();
+        jdbcClient.sql("""
+                CREATE TABLE %s (id UUID PRIMARY KEY, name VARCHAR(255), login VARCHAR(255), email VARCHAR(255),
+                                 password VARCHAR(255), last_update TIMESTAMP)""".formatted(TABLE)).update();
+        jdbcClient.sql("CREATE UNIQUE INDEX ON %s (lower(login))".formatted(TABLE)).update();
+        jdbcClient.sql("CREATE UNIQUE INDEX ON %s (lower(email))".formatted(TABLE)).update();
+        while (inserted < rows) {
+            insertBatch();
+        }
+        jdbcClient.sql("VACUUM ANALYZE " + TABLE).update();
+    }
+
+    @TearDown
+    public void tearDown() {
+        String primaryKeySize = jdbcClient.sql("SELECT pg_size_pretty(pg_relation_size(CAST(:index AS regclass)))")
+                .param("index", TABLE + "_pkey")
+                .query(String.class)
+                .single();
+        log.info("{}: {} rows, primary key index {}", generator, inserted, primaryKeySize);
+        jdbcClient.sql("DROP TABLE IF EXISTS " + TABLE).update();
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public int insert() {
+        return insertBatch();
+    }
+
+    private int insertBatch() {
+        var ids = new String[BATCH_SIZE];
+        var logins = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ids[i] = idGenerator.generate().toString();
+            logins[i] = "Roberto.Carlos." + (inserted + i);
+        }
+        inserted += BATCH_SIZE;
+        return jdbcClient.sql("""
+                        INSERT INTO %s
+                        SELECT id, 'Roberto Carlos', login, lower(login) || '@jaba.com', 'password', now()
+                        FROM unnest(CAST(:ids AS uuid[]), CAST(:logins AS text[])) AS rows(id, login)""".formatted(TABLE))
+                .param("ids", ids)
+                .param("logins", logins)
+                .update();
+    }
+}
@@ -0,0 +1,84 @@
+package app.jaba.benchmarks;
+
+import app.jaba.entities.UserEntity;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks a user up by login in a Postgres table of millions of rows, the way UserJdbcRepositoryImpl used to
+ * ({@code LIKE} and reflective mapping of {@code SELECT *}) and the way it does now (exact match on
+ * {@code lower(login)}, served by the unique expression index, selecting only the id).
+ * <p>
+ * Needs a Postgres database, given by {@code BENCHMARK_DATABASE_URL} (the Docker Compose one by default).
+ * The rows go in a table of their own, created with the same indexes as users and dropped afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserLookupBenchmark {
+
+    private static final String TABLE = "users_lookup_benchmark";
+
+    @Param({"2000000"})
+    int rows;
+
+    SingleConnectionDataSource dataSource;
+    JdbcClient jdbcClient;
+
+    @Setup
+    public void setUp() {
+        String url = System.getenv().getOrDefault("BENCHMARK_DATABASE_URL", "jdbc:postgresql://localhost:5432/jaba?user=user");
+        dataSource = new SingleConnectionDataSource(url, true);
+        jdbcClient = JdbcClient.create(dataSource);
+
+        jdbcClient.sql("DROP TABLE IF EXISTS " + TABLE).update();
+        jdbcClient.sql("""
+                CREATE TABLE %s (id UUID PRIMARY KEY, name VARCHAR(255), login VARCHAR(255), email VARCHAR(255),
+                                 password VARCHAR(255), last_update TIMESTAMP)""".formatted(TABLE)).update();
+        jdbcClient.sql("""
+                INSERT INTO %s
+                SELECT gen_random_uuid(), 'Roberto Carlos ' || i, 'Roberto.Carlos.' || i, 'roberto.carlos.' || i || '@jaba.com',
+                       'password' || i, now()
+                FROM generate_series(1, :rows) AS i""".formatted(TABLE))
+                .param("rows", rows)
+                .update();
+        jdbcClient.sql("CREATE UNIQUE INDEX ON %s (lower(login))".formatted(TABLE)).update();
+        jdbcClient.sql("CREATE UNIQUE INDEX ON %s (lower(email))".formatted(TABLE)).update();
+        jdbcClient.sql("ANALYZE " + TABLE).update();
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcClient.sql("DROP TABLE IF EXISTS " + TABLE).update();
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public Optional<UserEntity> likeSelectAll() {
+        return jdbcClient.sql("SELECT * FROM " + TABLE + " WHERE login LIKE :login")
+                .param("login", randomLogin())
+                .query(UserEntity.class)
+                .optional();
+    }
+
+    @Benchmark
+    public Optional<UUID> exactLowerSelectId() {
+        return jdbcClient.sql("SELECT id FROM " + TABLE + " WHERE lower(login) = lower(:login)")
+                .param("login", randomLogin())
+                .query(UUID.class)
+                .optional();
+    }
+
+    private String randomLogin() {
+        return "Roberto.Carlos." + ThreadLocalRandom.current().nextInt(1, rows + 1);
+    }
+}
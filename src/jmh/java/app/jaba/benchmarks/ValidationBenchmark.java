@@ -0,0 +1,52 @@
+package app.jaba.benchmarks;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.services.validations.address.AddressMandatoryFieldValidation;
+import app.jaba.services.validations.address.CreateAddressValidation;
+import app.jaba.services.validations.user.CreateUserValidation;
+import app.jaba.services.validations.user.EmailFormatValidation;
+import app.jaba.services.validations.user.UserMandatoryFieldValidation;
+import app.jaba.services.validations.user.UserPasswordMandatoryFieldValidation;
+import app.jaba.validators.EmailValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory validations run before a user is created, alone and as the whole chain UserService runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    EmailFormatValidation emailFormatValidation;
+    List<CreateUserValidation> userValidations;
+    List<CreateAddressValidation> addressValidations;
+    UserEntity user;
+
+    @Setup
+    public void setUp() {
+        emailFormatValidation = new EmailFormatValidation(new EmailValidator());
+        userValidations = List.of(new UserMandatoryFieldValidation(), new UserPasswordMandatoryFieldValidation(), emailFormatValidation);
+        addressValidations = List.of(new AddressMandatoryFieldValidation());
+        user = Fixtures.user(1);
+    }
+
+    @Benchmark
+    public UserEntity emailFormat() {
+        emailFormatValidation.validate(user);
+        return user;
+    }
+
+    @Benchmark
+    public UserEntity createUser() {
+        userValidations.forEach(validation -> validation.validate(user));
+        addressValidations.forEach(validation -> validation.validate(user.getAddress()));
+        return user;
+    }
+}
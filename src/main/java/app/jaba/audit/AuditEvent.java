@@ -0,0 +1,21 @@
+package app.jaba.audit;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Something a client asked for, written to the audit log as one JSON line.
+ *
+ * @param timestamp when it was asked.
+ * @param action    what was asked, such as {@code user.update}.
+ * @param userId    the user it was about, if any.
+ * @param details   the request body or parameters, serialized with secrets redacted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AuditEvent(Instant timestamp,
+                         String action,
+                         UUID userId,
+                         Object details) {
+}
@@ -0,0 +1,190 @@
+package app.jaba.audit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Writes {@link AuditEvent}s to the {@code audit} logger from a background thread, so that requests never
+ * format or write log lines themselves.
+ * <p>
+ * Requests add events to a lock-free queue bounded at the configured capacity. When it is full the event is
+ * dropped and counted instead of making the request wait. The writer drains the queue, then sleeps for the flush
+ * interval. Events are serialized as JSON with every property named after a password replaced by
+ * {@value #REDACTED}, whatever object it belongs to.
+ */
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+public class AuditLog implements SmartLifecycle {
+
+    private static final Logger AUDIT = LoggerFactory.getLogger("audit");
+    private static final Set<String> SECRET_PROPERTIES = Set.of("password", "oldPassword", "newPassword", "repeatNewPassword");
+    private static final String REDACTED = "***";
+
+    int capacity;
+    long flushIntervalNanos;
+    ObjectWriter writer;
+    Queue<AuditEvent> events = new ConcurrentLinkedQueue<>();
+    AtomicInteger queued = new AtomicInteger();
+    LongAdder written = new LongAdder();
+    LongAdder dropped = new LongAdder();
+
+    @NonFinal
+    volatile Thread drainer;
+    @NonFinal
+    volatile boolean running;
+
+    public AuditLog(@Value("${jaba.audit.queue-capacity:10000}") int capacity,
+                    @Value("${jaba.audit.flush-interval:50ms}") Duration flushInterval,
+                    ObjectMapper objectMapper,
+                    MeterRegistry meterRegistry) {
+        this.capacity = capacity;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.writer = objectMapper.copy()
+                .registerModule(redactingModule())
+                .writerFor(AuditEvent.class);
+
+        FunctionCounter.builder("audit.events", written, LongAdder::sum)
+                .tags("result", "written")
+                .register(meterRegistry);
+        FunctionCounter.builder("audit.events", dropped, LongAdder::sum)
+                .description("Audit events dropped because the queue was full")
+                .tags("result", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("audit.queue.size", queued, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues an event without blocking, or drops it if the queue is full.
+     *
+     * @param action  what was asked, such as {@code user.update}.
+     * @param userId  the user it is about, or null.
+     * @param details the request body or parameters, or null. Serialized later, so it must not be changed afterwards.
+     */
+    public void record(String action, UUID userId, Object details) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        events.offer(new AuditEvent(Instant.now(), action, userId, details));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        var thread = new Thread(this::drain, "audit-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        drainer = thread;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        var thread = drainer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started before and stopped after the web server, so that the events of the last requests are written.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private void drain() {
+        boolean draining = true;
+        while (draining) {
+            // Read before draining, so the events queued until the stop are still written.
+            draining = running;
+            AuditEvent event;
+            while ((event = events.poll()) != null) {
+                queued.decrementAndGet();
+                write(event);
+            }
+            if (draining) {
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+    }
+
+    private void write(AuditEvent event) {
+        try {
+            AUDIT.info(writer.writeValueAsString(event));
+            written.increment();
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Could not write audit event {}", event.action(), e);
+        }
+    }
+
+    private static SimpleModule redactingModule() {
+        var redacting = new JsonSerializer<>() {
+            @Override
+            public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+                generator.writeString(REDACTED);
+            }
+        };
+        var module = new SimpleModule("audit-redaction");
+        module.setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription description,
+                                                             List<BeanPropertyWriter> properties) {
+                properties.stream()
+                        .filter(property -> SECRET_PROPERTIES.contains(property.getName()))
+                        .forEach(property -> property.assignSerializer(redacting));
+                return properties;
+            }
+        });
+        return module;
+    }
+}
@@ -0,0 +1,93 @@
+package app.jaba.caches;
+
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * A Bloom filter of strings: it may report a string it was never given, but never misses one it was given.
+ * <p>
+ * Sized for an expected number of entries and false positive rate. The bit positions of a string are combinations
+ * of a 64-bit hash and its rotation (Kirsch and Mitzenmacher), and bits are set with compare-and-set,
+ * so the filter can be read and written concurrently without locks.
+ */
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class BloomFilter {
+
+    AtomicLongArray words;
+    long bitCount;
+    int hashCount;
+    LongAdder bitsSet = new LongAdder();
+
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        long bits = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / entries * Math.log(2)));
+    }
+
+    public void add(String value) {
+        long h1 = hash(value);
+        long h2 = Long.rotateLeft(h1, 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+            if ((current & mask) == 0) {
+                bitsSet.increment();
+            }
+        }
+    }
+
+    /**
+     * @return false if the value was definitely never added, true if it may have been.
+     */
+    public boolean mightContain(String value) {
+        long h1 = hash(value);
+        long h2 = Long.rotateLeft(h1, 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The false positive rate expected from how full the filter is now.
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitsSet.sum() / bitCount, hashCount);
+    }
+
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * FNV-1a over the characters, then the finalizer of SplitMix64 to spread the bits over both halves.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
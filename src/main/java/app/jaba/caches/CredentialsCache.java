@@ -0,0 +1,244 @@
+package app.jaba.caches;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Bounded cache of successful credential verifications, so that repeated sign-ins of the same user skip both the
+ * database and bcrypt for a short TTL. Failed verifications are never cached.
+ * <p>
+ * Entries are keyed by login, ignoring case, and hold the id of the user and an HMAC of the password that was
+ * verified, under a random key generated at startup. The password itself is never kept, and the HMAC cannot be
+ * checked against guesses without the key. A verification only hits when the HMAC of the presented password
+ * matches, compared in constant time. Concurrent verifications of the same login and password, as in a sign-in
+ * storm after the entry expired, wait for a single one, as long as no entry was evicted since it started.
+ * <p>
+ * Any change to a user, its password, login or deletion included, evicts its entry, on this node directly and on
+ * the others through {@link UserChangeListener}.
+ */
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class CredentialsCache implements UserChangeSubscriber {
+
+    private static final String CACHE_NAME = "credentials";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    boolean enabled;
+    long ttlNanos;
+    SecretKeySpec key;
+    Map<String, Entry> entries;
+    Map<UUID, String> loginsByUser = new HashMap<>();
+    AtomicLong invalidations = new AtomicLong();
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+    LongAdder evictions = new LongAdder();
+    SingleFlight<String, Optional<UUID>> verifications;
+
+    public CredentialsCache(@Value("${jaba.users.credentials-cache.enabled:true}") boolean enabled,
+                            @Value("${jaba.users.credentials-cache.max-size:10000}") int maxSize,
+                            @Value("${jaba.users.credentials-cache.ttl:30s}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        var keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.verifications = new SingleFlight<>("credentials.verify", UnaryOperator.identity(), meterRegistry);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    loginsByUser.remove(eldest.getValue().userId());
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tags("cache", CACHE_NAME)
+                .register(meterRegistry);
+        Gauge.builder("cache.size", this, CredentialsCache::size)
+                .tags("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the user a login and password were last verified for, verifying them with the given verifier when
+     * they were not, or not recently.
+     *
+     * @param login    the login presented.
+     * @param password the password presented.
+     * @param verifier the function that verifies the credentials against the database.
+     * @return the UUID of the user, or empty if the credentials are not valid.
+     */
+    public Optional<UUID> verify(String login, String password, Supplier<Optional<UUID>> verifier) {
+        if (!enabled) {
+            return verifier.get();
+        }
+
+        var normalizedLogin = login.toLowerCase(Locale.ROOT);
+        var secret = hmac(password);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(normalizedLogin);
+            if (entry != null && entry.isExpired()) {
+                remove(normalizedLogin, entry);
+                evictions.increment();
+                entry = null;
+            }
+        }
+        if (entry != null && MessageDigest.isEqual(entry.secret(), secret)) {
+            hits.increment();
+            return Optional.of(entry.userId());
+        }
+
+        misses.increment();
+        // Only a verification that started after the last eviction this caller saw can be shared with it.
+        long invalidationsBeforeVerify = invalidations.get();
+        var flightKey = normalizedLogin + ':' + invalidationsBeforeVerify + ':' + Base64.getEncoder().encodeToString(secret);
+        return verifications.load(flightKey, () -> {
+            var verified = verifier.get();
+            verified.ifPresent(userId -> put(normalizedLogin, new Entry(userId, secret, System.nanoTime() + ttlNanos),
+                    invalidationsBeforeVerify));
+            return verified;
+        });
+    }
+
+    /**
+     * Removes the verification of a user now and, when called inside a transaction, once more after it commits,
+     * so that a concurrent verification cannot cache the password as it was before the commit.
+     *
+     * @param userId the UUID of the user.
+     */
+    public void evict(UUID userId) {
+        if (!enabled) {
+            return;
+        }
+        remove(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts the evictions so far. A lookup that started when the count was lower may have read a password that
+     * was changed since, so it must not be shared with a caller that already saw the current count.
+     */
+    public long epoch() {
+        return invalidations.get();
+    }
+
+    /**
+     * Removes every verification from the cache.
+     */
+    public void clear() {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+            loginsByUser.clear();
+        }
+    }
+
+    @Override
+    public void onUserChanged(UUID userId) {
+        evict(userId);
+    }
+
+    @Override
+    public void onChangesMissed() {
+        clear();
+    }
+
+    private void put(String login, Entry entry, long invalidationsBeforeVerify) {
+        synchronized (entries) {
+            // An eviction that happened while verifying may be a password change the verifier did not see.
+            if (invalidations.get() == invalidationsBeforeVerify) {
+                var previousLogin = loginsByUser.put(entry.userId(), login);
+                if (previousLogin != null && !previousLogin.equals(login)) {
+                    entries.remove(previousLogin);
+                }
+                var previous = entries.put(login, entry);
+                if (previous != null && !previous.userId().equals(entry.userId())) {
+                    loginsByUser.remove(previous.userId());
+                }
+            }
+        }
+    }
+
+    private void remove(UUID userId) {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            var login = loginsByUser.remove(userId);
+            if (login != null) {
+                entries.remove(login);
+            }
+        }
+    }
+
+    private void remove(String login, Entry entry) {
+        entries.remove(login);
+        loginsByUser.remove(entry.userId(), login);
+    }
+
+    private byte[] hmac(String password) {
+        try {
+            var mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(UUID userId, byte[] secret, long expiresAt) {
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package app.jaba.caches;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the load, and callers that arrive while it
+ * is still running wait for its result instead of running their own.
+ * <p>
+ * Loads in flight are kept as futures in a concurrent map, so no lock is held while loading. A key leaves the map as
+ * soon as its load completes, so nothing is cached: a caller that arrives afterwards loads again.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values loaded.
+ */
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class SingleFlight<K, V> {
+
+    ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    LongAdder coalesced = new LongAdder();
+    UnaryOperator<V> copier;
+
+    /**
+     * @param name          the name of the meter counting the coalesced calls, tagged with it.
+     * @param copier        gives each waiting caller its own copy of a mutable value.
+     * @param meterRegistry the registry of the meter.
+     */
+    public SingleFlight(String name, UnaryOperator<V> copier, MeterRegistry meterRegistry) {
+        this.copier = copier;
+        FunctionCounter.builder("singleflight.coalesced", coalesced, LongAdder::sum)
+                .description("Calls that waited for the result of an identical call already in flight")
+                .tags("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads the value of a key, or waits for the load of the same key already in flight.
+     *
+     * @param key    the key to load.
+     * @param loader loads the value when there is no load of the key in flight.
+     * @return the value loaded, or a copy of it for a caller that waited.
+     */
+    public V load(K key, Supplier<V> loader) {
+        var flight = new CompletableFuture<V>();
+        var existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return copier.apply(await(existing));
+        }
+
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package app.jaba.caches;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.repositories.UserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Bloom filter of the logins and emails in use, lower-cased as the unique indexes compare them, so that
+ * checking a value nobody uses does not need a query.
+ * <p>
+ * The filter is built by streaming the users table, in the background, when the {@link UserChangeListener}
+ * connects and again whenever it reconnects. Until then every check goes to the database. Users created or updated
+ * on this node are added right away, and those of other nodes when their change notification arrives, read in the
+ * background so that the listener never waits for the database. If they cannot be read, the filter is dropped and
+ * rebuilt, since it would otherwise rule them out. Without the change listener the users of other nodes would never
+ * be added, so the filter is never built and every check goes to the database. Values that are no longer in use stay
+ * in the filter until the next rebuild, which only costs a query.
+ */
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+public class UserAvailabilityFilter implements UserChangeSubscriber, SmartLifecycle {
+
+    private static final String FILTER_NAME = "users.availability";
+    private static final String LOGIN_PREFIX = "login:";
+    private static final String EMAIL_PREFIX = "email:";
+
+    boolean enabled;
+    long expectedUsers;
+    double falsePositiveRate;
+    int fetchSize;
+    UserRepository userRepository;
+    TransactionTemplate readOnlyTransaction;
+    ObjectProvider<UserChangeListener> changeListener;
+    ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "user-availability-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    ReadWriteLock publication = new ReentrantReadWriteLock();
+    LongAdder negatives = new LongAdder();
+    LongAdder falsePositives = new LongAdder();
+    LongAdder truePositives = new LongAdder();
+
+    @NonFinal
+    volatile BloomFilter current;
+    @NonFinal
+    volatile BloomFilter building;
+    @NonFinal
+    volatile boolean running;
+
+    public UserAvailabilityFilter(@Value("${jaba.users.availability-filter.enabled:true}") boolean enabled,
+                                  @Value("${jaba.users.availability-filter.expected-users:1000000}") long expectedUsers,
+                                  @Value("${jaba.users.availability-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                                  @Value("${jaba.users.export.fetch-size:1000}") int fetchSize,
+                                  UserRepository userRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  ObjectProvider<UserChangeListener> changeListener,
+                                  MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.fetchSize = fetchSize;
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.changeListener = changeListener;
+
+        FunctionCounter.builder("bloom.filter.checks", negatives, LongAdder::sum)
+                .tags("filter", FILTER_NAME, "result", "negative")
+                .register(meterRegistry);
+        FunctionCounter.builder("bloom.filter.checks", falsePositives, LongAdder::sum)
+                .tags("filter", FILTER_NAME, "result", "false_positive")
+                .register(meterRegistry);
+        FunctionCounter.builder("bloom.filter.checks", truePositives, LongAdder::sum)
+                .tags("filter", FILTER_NAME, "result", "true_positive")
+                .register(meterRegistry);
+        Gauge.builder("bloom.filter.false.positive.rate", this, UserAvailabilityFilter::observedFalsePositiveRate)
+                .description("False positives over the checks of values not in use")
+                .tags("filter", FILTER_NAME, "kind", "observed")
+                .register(meterRegistry);
+        Gauge.builder("bloom.filter.false.positive.rate", this, UserAvailabilityFilter::expectedFalsePositiveRate)
+                .description("False positive rate expected from how full the filter is")
+                .tags("filter", FILTER_NAME, "kind", "expected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tells whether a login is in use, only querying the database when the filter cannot rule it out.
+     *
+     * @param login  the login to check.
+     * @param lookup whether the login is in use according to the database.
+     */
+    public boolean isLoginInUse(String login, Predicate<String> lookup) {
+        return isInUse(loginKey(login), login, lookup);
+    }
+
+    /**
+     * Tells whether an email is in use, only querying the database when the filter cannot rule it out.
+     *
+     * @param email  the email to check.
+     * @param lookup whether the email is in use according to the database.
+     */
+    public boolean isEmailInUse(String email, Predicate<String> lookup) {
+        return isInUse(emailKey(email), email, lookup);
+    }
+
+    /**
+     * @return false if no user has the login, true if one may have it.
+     */
+    public boolean mightHaveLogin(String login) {
+        var filter = current;
+        return filter == null || filter.mightContain(loginKey(login));
+    }
+
+    /**
+     * @return false if no user has the email, true if one may have it.
+     */
+    public boolean mightHaveEmail(String email) {
+        var filter = current;
+        return filter == null || filter.mightContain(emailKey(email));
+    }
+
+    /**
+     * Records the login and email of a user that was just created or updated.
+     * <p>
+     * Adds run concurrently with each other, but not while a rebuilt filter is being published, which would let
+     * the user land in the filter being replaced only.
+     */
+    public void add(UserEntity user) {
+        publication.readLock().lock();
+        try {
+            add(current, user);
+            add(building, user);
+        } finally {
+            publication.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onUserChanged(UUID userId) {
+        onUsersChanged(List.of(userId));
+    }
+
+    @Override
+    public void onUsersChanged(List<UUID> userIds) {
+        if (enabled) {
+            rebuilder.execute(() -> addChanged(userIds));
+        }
+    }
+
+    @Override
+    public void onChangesMissed() {
+        if (enabled) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (enabled && changeListener.getIfAvailable() == null) {
+            log.info("Availability filter disabled, since user changes of other nodes are not listened to");
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        rebuilder.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private boolean isInUse(String key, String value, Predicate<String> lookup) {
+        var filter = current;
+        if (filter != null && !filter.mightContain(key)) {
+            negatives.increment();
+            return false;
+        }
+
+        boolean inUse = lookup.test(value);
+        if (filter != null) {
+            (inUse ? truePositives : falsePositives).increment();
+        }
+        return inUse;
+    }
+
+    private void rebuild() {
+        try {
+            long started = System.nanoTime();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                // Two entries per user, with room for the table to double before the next rebuild.
+                long users = Math.max(expectedUsers, 2 * userRepository.count());
+                building = new BloomFilter(2 * users, falsePositiveRate);
+                userRepository.streamAll(fetchSize, user -> add(building, user));
+            });
+            publication.writeLock().lock();
+            try {
+                current = building;
+                building = null;
+            } finally {
+                publication.writeLock().unlock();
+            }
+            log.info("Availability filter built in {}ms", (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.warn("Could not build the availability filter, checks keep going to the database", e);
+        } finally {
+            building = null;
+        }
+    }
+
+    private void addChanged(List<UUID> userIds) {
+        try {
+            userRepository.findAllByIds(userIds).forEach(this::add);
+        } catch (RuntimeException e) {
+            log.warn("Could not read {} changed users, rebuilding the availability filter", userIds.size(), e);
+            current = null;
+            rebuild();
+        }
+    }
+
+    private double observedFalsePositiveRate() {
+        long falsePositiveCount = falsePositives.sum();
+        long total = falsePositiveCount + negatives.sum();
+        return total == 0 ? 0 : (double) falsePositiveCount / total;
+    }
+
+    private double expectedFalsePositiveRate() {
+        var filter = current;
+        return filter == null ? Double.NaN : filter.expectedFalsePositiveRate();
+    }
+
+    private static void add(BloomFilter filter, UserEntity user) {
+        if (filter != null) {
+            filter.add(loginKey(user.getLogin()));
+            filter.add(emailKey(user.getEmail()));
+        }
+    }
+
+    private static String loginKey(String login) {
+        return LOGIN_PREFIX + login.toLowerCase(Locale.ROOT);
+    }
+
+    private static String emailKey(String email) {
+        return EMAIL_PREFIX + email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,189 @@
+package app.jaba.caches;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.mappers.UserMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Bounded, read-through cache of user snapshots, evicted in least recently used order and after a fixed TTL.
+ * <p>
+ * Entries are copies of what the repository returned, and every read hands out a new copy, so callers
+ * are free to mutate what they get back.
+ */
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class UserCache implements UserChangeSubscriber {
+
+    private static final String CACHE_NAME = "users";
+
+    boolean enabled;
+    long ttlNanos;
+    Map<UUID, Entry> entries;
+    AtomicLong invalidations = new AtomicLong();
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+    LongAdder evictions = new LongAdder();
+    UserMapper userMapper;
+
+    public UserCache(@Value("${jaba.users.cache.enabled:true}") boolean enabled,
+                     @Value("${jaba.users.cache.max-size:10000}") int maxSize,
+                     @Value("${jaba.users.cache.ttl:60s}") Duration ttl,
+                     UserMapper userMapper,
+                     MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.userMapper = userMapper;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tags("cache", CACHE_NAME)
+                .register(meterRegistry);
+        Gauge.builder("cache.size", this, UserCache::size)
+                .tags("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached user, loading it with the given loader on a miss.
+     *
+     * @param id     the UUID of the user.
+     * @param loader the function that reads the user from the database.
+     * @return a copy of the cached user, or empty if the loader did not find it.
+     */
+    public Optional<UserEntity> get(UUID id, Function<UUID, Optional<UserEntity>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(id);
+                evictions.increment();
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.increment();
+            return Optional.of(userMapper.copy(entry.user()));
+        }
+
+        misses.increment();
+        long invalidationsBeforeLoad = invalidations.get();
+        Optional<UserEntity> loaded = loader.apply(id);
+        loaded.ifPresent(user -> put(id, user, invalidationsBeforeLoad));
+        return loaded.map(userMapper::copy);
+    }
+
+    /**
+     * Removes a user from the cache now and, when called inside a transaction, once more after it commits,
+     * so that a concurrent read cannot cache the row as it was before the commit.
+     *
+     * @param id the UUID of the user.
+     */
+    public void evict(UUID id) {
+        if (!enabled) {
+            return;
+        }
+        remove(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts the evictions so far. A load that started when the count was lower may have read a row that was
+     * evicted since, so it must not be shared with a caller that already saw the current count.
+     */
+    public long epoch() {
+        return invalidations.get();
+    }
+
+    /**
+     * Removes every user from the cache.
+     */
+    public void clear() {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void onUserChanged(UUID userId) {
+        evict(userId);
+    }
+
+    @Override
+    public void onChangesMissed() {
+        clear();
+    }
+
+    private void put(UUID id, UserEntity user, long invalidationsBeforeLoad) {
+        Entry entry = new Entry(userMapper.copy(user), System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            // An eviction that happened while the loader was running may refer to a row newer than the one loaded.
+            if (invalidations.get() == invalidationsBeforeLoad) {
+                entries.put(id, entry);
+            }
+        }
+    }
+
+    private void remove(UUID id) {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            entries.remove(id);
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(UserEntity user, long expiresAt) {
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
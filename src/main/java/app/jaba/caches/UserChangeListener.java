@@ -0,0 +1,138 @@
+package app.jaba.caches;
+
+import app.jaba.repositories.UserChangeNotifier;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Listens on the {@value UserChangeNotifier#CHANNEL} Postgres channel and forwards every change to the
+ * {@link UserChangeSubscriber}s of this node.
+ * <p>
+ * Uses a dedicated connection outside the pool, since a listening connection is held for the lifetime of the node.
+ * A subscriber that fails is logged and does not keep the others from being called, and any other failure
+ * reconnects, so that the node never stops receiving changes while it runs.
+ */
+@Component
+@ConditionalOnProperty(value = "jaba.users.change-listener.enabled", havingValue = "true", matchIfMissing = true)
+@FieldDefaults(level = PRIVATE)
+@Slf4j
+public class UserChangeListener implements SmartLifecycle {
+
+    final DataSourceProperties dataSourceProperties;
+    final List<UserChangeSubscriber> subscribers;
+    final Duration pollTimeout;
+    final Duration reconnectDelay;
+    volatile boolean running;
+    Thread thread;
+
+    public UserChangeListener(DataSourceProperties dataSourceProperties,
+                              List<UserChangeSubscriber> subscribers,
+                              @Value("${jaba.users.change-listener.poll-timeout:500ms}") Duration pollTimeout,
+                              @Value("${jaba.users.change-listener.reconnect-delay:5s}") Duration reconnectDelay) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.subscribers = subscribers;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = new Thread(this::listen, "user-change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + UserChangeNotifier.CHANNEL);
+                }
+                log.info("Listening for user changes on channel {}", UserChangeNotifier.CHANNEL);
+                notifySubscribers("missed changes", UserChangeSubscriber::onChangesMissed);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("User change listener disconnected, reconnecting in {}", reconnectDelay, e);
+                    sleep(reconnectDelay);
+                }
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        List<UUID> userIds = new ArrayList<>();
+        for (String id : payload.split(UserChangeNotifier.SEPARATOR)) {
+            try {
+                userIds.add(UUID.fromString(id));
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring user change with invalid id: {}", id);
+            }
+        }
+        if (!userIds.isEmpty()) {
+            notifySubscribers("change of " + payload, subscriber -> subscriber.onUsersChanged(userIds));
+        }
+    }
+
+    private void notifySubscribers(String event, Consumer<UserChangeSubscriber> call) {
+        for (UserChangeSubscriber subscriber : subscribers) {
+            try {
+                call.accept(subscriber);
+            } catch (RuntimeException e) {
+                log.error("{} failed to handle the {}", ClassUtils.getUserClass(subscriber).getSimpleName(), event, e);
+            }
+        }
+    }
+
+    private void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package app.jaba.caches;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Receives the user changes published by any node through {@link UserChangeListener}.
+ */
+public interface UserChangeSubscriber {
+
+    void onUserChanged(UUID userId);
+
+    /**
+     * Called with the users of a single notification, which carries several when they were inserted in bulk.
+     */
+    default void onUsersChanged(List<UUID> userIds) {
+        userIds.forEach(this::onUserChanged);
+    }
+
+    /**
+     * Called whenever the listener (re)connects, since changes published while it was disconnected are lost.
+     */
+    void onChangesMissed();
+}
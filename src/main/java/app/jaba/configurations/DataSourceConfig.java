@@ -0,0 +1,44 @@
+package app.jaba.configurations;
+
+import app.jaba.datasources.ConcurrencyLimitingDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(value = "jaba.datasource.limiter.enabled", havingValue = "true")
+public class DataSourceConfig {
+
+    /**
+     * Puts a {@link ConcurrencyLimitingDataSource} in front of the connection pool.
+     * Declared static so that it does not pull this configuration in before the post processors run.
+     */
+    @Bean
+    static BeanPostProcessor concurrencyLimitingDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConcurrencyLimitingDataSource)) {
+                    return new ConcurrencyLimitingDataSource(
+                            dataSource,
+                            environment.getRequiredProperty("jaba.datasource.limiter.max-concurrency", Integer.class),
+                            environment.getRequiredProperty("jaba.datasource.limiter.acquire-timeout", Duration.class));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    MeterBinder concurrencyLimitingDataSourceMetrics(DataSource dataSource) throws SQLException {
+        var limiter = dataSource.unwrap(ConcurrencyLimitingDataSource.class);
+        return limiter::bindTo;
+    }
+}
@@ -30,7 +30,7 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, status);
     }
 
-    @ExceptionHandler({EmailAlreadyInUseException.class, LoginAlreadyInUseException.class})
+    @ExceptionHandler({EmailAlreadyInUseException.class, LoginAlreadyInUseException.class, IdempotencyKeyInProgressException.class})
     public ResponseEntity<ErrorResponseDto> handleAlreadyInUseException(RuntimeException ex, WebRequest request) {
         return buildErrorResponse(ex, request, HttpStatus.CONFLICT);
     }
@@ -46,6 +46,9 @@ public class GlobalExceptionHandler {
     @ExceptionHandler({
             AddressMandatoryFieldException.class,
             EmailFormatException.class,
+            InvalidCursorValueException.class,
+            InvalidIdempotencyKeyException.class,
+            InvalidImportFileException.class,
             InvalidPageValueException.class,
             InvalidPasswordException.class,
             InvalidSizeValueException.class,
@@ -59,6 +62,21 @@ public class GlobalExceptionHandler {
         return buildErrorResponse(ex, request, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidCredentialsException.class)
+    public ResponseEntity<ErrorResponseDto> handleUnauthorized(RuntimeException ex, WebRequest request) {
+        return buildErrorResponse(ex, request, HttpStatus.UNAUTHORIZED);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public ResponseEntity<ErrorResponseDto> handleUnprocessable(RuntimeException ex, WebRequest request) {
+        return buildErrorResponse(ex, request, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorResponseDto> handlePreconditionFailed(RuntimeException ex, WebRequest request) {
+        return buildErrorResponse(ex, request, HttpStatus.PRECONDITION_FAILED);
+    }
+
     @ExceptionHandler({
             SaveUserException.class,
             SaveAddressException.class,
@@ -68,6 +86,11 @@ public class GlobalExceptionHandler {
         return buildErrorResponse(ex, request, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    public ResponseEntity<ErrorResponseDto> handleUnavailable(RuntimeException ex, WebRequest request) {
+        return buildErrorResponse(ex, request, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ErrorResponseDto> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
         return buildErrorResponse(ex, request, HttpStatus.BAD_REQUEST);
@@ -0,0 +1,53 @@
+package app.jaba.configurations;
+
+import app.jaba.datasources.SlowQueriesEndpoint;
+import app.jaba.datasources.StatementMonitoringDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(value = "jaba.datasource.slow-queries.enabled", havingValue = "true")
+public class SlowQueryConfig {
+
+    /**
+     * Puts a {@link StatementMonitoringDataSource} in front of the data source.
+     * Declared static so that it does not pull this configuration in before the post processors run.
+     */
+    @Bean
+    static BeanPostProcessor statementMonitoringDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof StatementMonitoringDataSource)) {
+                    return new StatementMonitoringDataSource(
+                            dataSource,
+                            environment.getRequiredProperty("jaba.datasource.slow-queries.threshold", Duration.class),
+                            environment.getRequiredProperty("jaba.datasource.slow-queries.plan-interval", Duration.class),
+                            environment.getRequiredProperty("jaba.datasource.slow-queries.plan-timeout", Duration.class),
+                            environment.getRequiredProperty("jaba.datasource.slow-queries.log-size", Integer.class),
+                            environment.getRequiredProperty("jaba.datasource.slow-queries.max-statements", Integer.class));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    SlowQueriesEndpoint slowQueriesEndpoint(DataSource dataSource) throws SQLException {
+        return new SlowQueriesEndpoint(dataSource.unwrap(StatementMonitoringDataSource.class));
+    }
+
+    @Bean
+    MeterBinder statementMonitoringDataSourceMetrics(DataSource dataSource) throws SQLException {
+        var monitoring = dataSource.unwrap(StatementMonitoringDataSource.class);
+        return monitoring::bindTo;
+    }
+}
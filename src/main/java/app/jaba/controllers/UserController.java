@@ -1,97 +1,372 @@
 package app.jaba.controllers;
 
+import app.jaba.audit.AuditLog;
+import app.jaba.dtos.CredentialsDto;
+import app.jaba.dtos.CredentialsVerificationDto;
 import app.jaba.dtos.UpdatePasswordDto;
+import app.jaba.dtos.UserAvailabilityDto;
+import app.jaba.dtos.UserBatchResultDto;
 import app.jaba.dtos.UserDto;
+import app.jaba.dtos.UserImportReportDto;
+import app.jaba.dtos.UserImportRowDto;
+import app.jaba.dtos.UserMultiGetDto;
+import app.jaba.dtos.UserPatchDto;
+import app.jaba.entities.UserEntity;
+import app.jaba.exceptions.EmailAlreadyInUseException;
+import app.jaba.exceptions.InvalidImportFileException;
+import app.jaba.exceptions.LoginAlreadyInUseException;
+import app.jaba.exceptions.PasswordHashingUnavailableException;
+import app.jaba.exceptions.SaveUserException;
 import app.jaba.mappers.UserMapper;
+import app.jaba.services.IdempotencyService;
+import app.jaba.services.UserBatchService;
+import app.jaba.services.UserImportService;
 import app.jaba.services.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @RestController
 @RequestMapping("/api/v1/users")
 @RequiredArgsConstructor
 @FieldDefaults(makeFinal = true, level = lombok.AccessLevel.PRIVATE)
-@Slf4j
 @Tag(name = "User", description = "User API")
 public class UserController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final String TEXT_CSV = "text/csv";
+    private static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+    private static final String IMPORT_CSV_COLUMNS = "name,login,email,password,street,city,state,zip,number";
+    private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+            .build();
+
     UserService userService;
+    UserBatchService userBatchService;
+    UserImportService userImportService;
     UserMapper userMapper;
+    ObjectMapper objectMapper;
+    AuditLog auditLog;
+    IdempotencyService idempotencyService;
 
-    @Operation(summary = "Create a new user")
+    @Operation(summary = "Create a new user",
+            description = "With an " + IDEMPOTENCY_KEY_HEADER + " header, a retry with the same key and user gets the response of the first request back, "
+                    + "with " + IDEMPOTENT_REPLAYED_HEADER + ": true, instead of creating the user again.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "User created successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "409", description = "Login or email already in use, or a request with the same idempotency key still in progress"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used with a different user"),
+            @ApiResponse(responseCode = "503", description = "Too many passwords being hashed, try again later")
     })
     @PostMapping
-    public ResponseEntity<UserDto> create(@Validated @RequestBody UserDto userDto) {
-        log.info("Creating user: {}", userDto);
-        return ResponseEntity.status(HttpStatus.CREATED).body(userMapper.map(userService.save(userMapper.map(userDto))));
+    public ResponseEntity<UserDto> create(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                          @Validated @RequestBody UserDto userDto) {
+        auditLog.record("user.create", null, userDto);
+        if (idempotencyKey == null) {
+            return ResponseEntity.status(HttpStatus.CREATED).body(userMapper.map(userService.save(userMapper.map(userDto))));
+        }
+
+        var result = idempotencyService.execute(idempotencyKey, withoutPassword(userDto), UserDto.class,
+                completion -> userMapper.map(userService.save(userMapper.map(userDto),
+                        saved -> completion.complete(userMapper.map(saved)))));
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                .body(result.value());
+    }
+
+    @Operation(summary = "Create users in batch",
+            description = "Validates every user, then saves the valid ones in chunks. Each item reports the status a single create would have returned.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed"),
+            @ApiResponse(responseCode = "400", description = "Too many users in the batch")
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<List<UserBatchResultDto>> createAll(@RequestBody List<UserDto> userDtos) {
+        auditLog.record("user.create_batch", null, Map.of("size", userDtos.size()));
+        var results = userBatchService.saveAll(userDtos.stream().map(userMapper::map).toList());
+        return ResponseEntity.ok(results
+                .stream()
+                .map(result -> new UserBatchResultDto(
+                        result.getIndex(),
+                        batchStatus(result.getError()).value(),
+                        result.getError() == null ? userMapper.map(result.getUser()) : null,
+                        result.getError() == null ? null : result.getError().getMessage()))
+                .toList());
+    }
+
+    @Operation(summary = "Import users in bulk",
+            description = "Loads users from CSV (with a header row: " + IMPORT_CSV_COLUMNS + ") or from newline-delimited JSON with one user per line. "
+                    + "Invalid rows and rows whose login or email is already in use are reported and skipped.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Users imported"),
+            @ApiResponse(responseCode = "400", description = "Malformed file"),
+            @ApiResponse(responseCode = "503", description = "Too many passwords being hashed, try again later")
+    })
+    @PostMapping(value = "/import", consumes = {TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<UserImportReportDto> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) throws IOException {
+        auditLog.record("user.import", null, Map.of("contentType", contentType.toString()));
+        Stream<UserEntity> users;
+        if (contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)) {
+            MappingIterator<UserDto> rows = objectMapper.readerFor(UserDto.class).readValues(body);
+            users = stream(rows).map(userMapper::map);
+        } else {
+            MappingIterator<UserImportRowDto> rows = CSV_MAPPER.readerFor(UserImportRowDto.class)
+                    .with(CsvSchema.emptySchema().withHeader())
+                    .readValues(body);
+            users = stream(rows).map(userMapper::map);
+        }
+        var report = userImportService.importUsers(users);
+        return ResponseEntity.ok(userMapper.map(report));
     }
 
-    @Operation(summary = "Get a user by id")
+    @Operation(summary = "Get a user by id",
+            description = "Returns an ETag, which can be sent back in If-None-Match to get a 304 while the user is unchanged, or in If-Match to update or delete it only if it is.")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "User created successfully")
+            @ApiResponse(responseCode = "200", description = "User created successfully"),
+            @ApiResponse(responseCode = "304", description = "User not modified since the given ETag")
     })
     @GetMapping("/{id}")
     public ResponseEntity<UserDto> findById(@PathVariable(value = "id") UUID id) {
-        return ResponseEntity.status(HttpStatus.OK).body(userMapper.map(userService.findById(id)));
+        return withETag(userService.findById(id));
     }
 
-    @Operation(summary = "Get all users")
+    @Operation(summary = "Get all users",
+            description = "Pages by offset with page/size, or by cursor with after/size. The cursor of the next page is returned in the " + NEXT_CURSOR_HEADER + " header.")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Users retrieved successfully")
+            @ApiResponse(responseCode = "200", description = "Users retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid page, size or cursor")
     })
     @GetMapping
-    public ResponseEntity<List<UserDto>> findAll(@RequestParam(value = "size", defaultValue = "10") int size, @RequestParam(value = "page", defaultValue = "0") int page) {
-        log.info("Finding all users");
-        return ResponseEntity.ok(userService.findAll(page, size)
+    public ResponseEntity<List<UserDto>> findAll(@RequestParam(value = "size", defaultValue = "10") int size,
+                                                 @RequestParam(value = "page", defaultValue = "0") int page,
+                                                 @RequestParam(value = "after", required = false) String after) {
+        auditLog.record("user.find_all", null, null);
+        var users = after == null ? userService.findAll(page, size) : userService.findAllAfter(after, size);
+        var response = ResponseEntity.ok();
+        userService.nextCursor(users, size).ifPresent(cursor -> response.header(NEXT_CURSOR_HEADER, cursor));
+        return response.body(users
                 .stream()
                 .map(userMapper::map)
                 .toList());
     }
 
+    @Operation(summary = "Get many users by id",
+            description = "Fetches the users with the given ids in a single query. Users are returned in the order of the ids, and the ids with no user are listed apart.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Users retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Too many ids")
+    })
+    @GetMapping(params = "ids")
+    public ResponseEntity<UserMultiGetDto> findAllByIds(@RequestParam("ids") List<UUID> ids) {
+        auditLog.record("user.find_by_ids", null, Map.of("size", ids.size()));
+        return ResponseEntity.ok(userMapper.map(userService.findAllByIds(ids)));
+    }
+
+    @Operation(summary = "Check whether a login and an email are available",
+            description = "Tells, for each of the login and email given, whether no user has it yet. Case is ignored, as when saving a user.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Availability checked"),
+            @ApiResponse(responseCode = "400", description = "Neither a login nor an email given")
+    })
+    @GetMapping("/availability")
+    public ResponseEntity<UserAvailabilityDto> checkAvailability(@RequestParam(value = "login", required = false) String login,
+                                                                 @RequestParam(value = "email", required = false) String email) {
+        return ResponseEntity.ok(userMapper.map(userService.checkAvailability(login, email)));
+    }
+
+    @Operation(summary = "Verify the credentials of a user",
+            description = "Checks a login, ignoring case, and a password, for sign-in. Successful verifications are cached for a few seconds.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Credentials are valid"),
+            @ApiResponse(responseCode = "400", description = "Login or password missing"),
+            @ApiResponse(responseCode = "401", description = "Invalid login or password"),
+            @ApiResponse(responseCode = "503", description = "Too many passwords being hashed, try again later")
+    })
+    @PostMapping("/credentials:verify")
+    public ResponseEntity<CredentialsVerificationDto> verifyCredentials(@Validated @RequestBody CredentialsDto credentialsDto) {
+        auditLog.record("user.verify_credentials", null, credentialsDto);
+        return ResponseEntity.ok(new CredentialsVerificationDto(userService.verifyCredentials(userMapper.map(credentialsDto))));
+    }
+
+    @Operation(summary = "Export all users",
+            description = "Streams every user as newline-delimited JSON, one user per line, while they are read from the database.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Users exported successfully")
+    })
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        auditLog.record("user.export", null, null);
+        ObjectWriter writer = objectMapper.writerFor(UserDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                userService.exportAll(user -> {
+                    try {
+                        writer.writeValue(generator, userMapper.map(user));
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @Operation(summary = "Update a user by id")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "User updated successfully")
+            @ApiResponse(responseCode = "200", description = "User updated successfully"),
+            @ApiResponse(responseCode = "412", description = "User modified since the ETags given in If-Match, or does not exist")
     })
     @PutMapping("/{id}")
-    public ResponseEntity<UserDto> update(@PathVariable("id") UUID id, @RequestBody UserDto userDto) {
-        log.info("Updating user with id: {}", id);
-        return ResponseEntity.ok(userMapper.map(userService.update(id, userMapper.map(userDto))));
+    public ResponseEntity<UserDto> update(@PathVariable("id") UUID id,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                          @RequestBody UserDto userDto) {
+        auditLog.record("user.update", id, userDto);
+        return withETag(userService.update(id, userMapper.map(userDto), UserETags.parseIfMatch(ifMatch)));
+    }
+
+    @Operation(summary = "Partially update a user by id",
+            description = "Applies a JSON merge patch: only the fields present are changed. The password has its own endpoint")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "User updated successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "404", description = "User not found"),
+            @ApiResponse(responseCode = "409", description = "Login or email already in use"),
+            @ApiResponse(responseCode = "412", description = "User modified since the ETags given in If-Match, or does not exist")
+    })
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<UserDto> patch(@PathVariable("id") UUID id,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                         @RequestBody UserPatchDto userPatchDto) {
+        auditLog.record("user.patch", id, userPatchDto);
+        return withETag(userService.patch(id, userMapper.map(userPatchDto), UserETags.parseIfMatch(ifMatch)));
     }
 
     @Operation(summary = "Update user password")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "User password updated successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "503", description = "Too many passwords being hashed, try again later")
     })
     @PatchMapping("/{id}/password")
     public ResponseEntity<UserDto> updatePassword(@PathVariable("id") UUID id, @Validated @RequestBody UpdatePasswordDto updatePasswordDto) {
-        log.info("Updating user password with id: {}", id);
+        auditLog.record("user.update_password", id, null);
         return ResponseEntity.ok(userMapper.map(userService.updatePassword(id, userMapper.map(updatePasswordDto))));
     }
 
     @Operation(summary = "Delete a user")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "204", description = "User deleted successfully")
+            @ApiResponse(responseCode = "204", description = "User deleted successfully"),
+            @ApiResponse(responseCode = "412", description = "User modified since the ETags given in If-Match, or does not exist")
     })
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> delete(@PathVariable("id") UUID id) {
-        log.info("Deleting user with id: {}", id);
-        userService.deleteById(id);
+    public ResponseEntity<Void> delete(@PathVariable("id") UUID id,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        auditLog.record("user.delete", id, null);
+        userService.deleteById(id, UserETags.parseIfMatch(ifMatch));
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * Responds with the user and its ETag. On a GET whose If-None-Match holds that ETag, Spring answers 304 without a body.
+     */
+    private ResponseEntity<UserDto> withETag(UserEntity user) {
+        var response = ResponseEntity.ok();
+        var eTag = UserETags.of(user.getLastUpdate());
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+        return response.body(userMapper.map(user));
+    }
+
+    private static <T> Stream<T> stream(MappingIterator<T> rows) {
+        Iterator<T> iterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return rows.hasNextValue();
+                } catch (IOException e) {
+                    throw invalidImportFile(e);
+                }
+            }
+
+            @Override
+            public T next() {
+                try {
+                    return rows.nextValue();
+                } catch (IOException e) {
+                    throw invalidImportFile(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    private static InvalidImportFileException invalidImportFile(IOException e) {
+        if (e instanceof JsonProcessingException jsonException && jsonException.getLocation() != null) {
+            return new InvalidImportFileException("Malformed file at line " + jsonException.getLocation().getLineNr()
+                    + ": " + jsonException.getOriginalMessage());
+        }
+        return new InvalidImportFileException("Malformed file: " + e.getMessage());
+    }
+
+    /**
+     * The user as compared between requests with the same idempotency key, which does not need the password.
+     */
+    private static UserDto withoutPassword(UserDto userDto) {
+        return new UserDto(userDto.id(), userDto.name(), userDto.login(), userDto.email(), null, userDto.address(), userDto.lastUpdate());
+    }
+
+    private static HttpStatus batchStatus(RuntimeException error) {
+        if (error == null) {
+            return HttpStatus.CREATED;
+        }
+        if (error instanceof LoginAlreadyInUseException || error instanceof EmailAlreadyInUseException) {
+            return HttpStatus.CONFLICT;
+        }
+        if (error instanceof SaveUserException) {
+            return HttpStatus.INTERNAL_SERVER_ERROR;
+        }
+        if (error instanceof PasswordHashingUnavailableException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        return HttpStatus.BAD_REQUEST;
+    }
 }
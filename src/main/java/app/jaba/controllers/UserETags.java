@@ -0,0 +1,78 @@
+package app.jaba.controllers;
+
+import app.jaba.exceptions.PreconditionFailedException;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entity tags of users, derived from their last update: the microseconds since the epoch, in hexadecimal.
+ * The last update changes on every write to the user, so two representations with the same tag are the same.
+ */
+final class UserETags {
+
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final int NANOS_PER_MICRO = 1_000;
+
+    private UserETags() {
+    }
+
+    /**
+     * @return the strong entity tag for the given last update, or null if there is none.
+     */
+    static String of(LocalDateTime lastUpdate) {
+        if (lastUpdate == null) {
+            return null;
+        }
+        long micros = lastUpdate.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + lastUpdate.getNano() / NANOS_PER_MICRO;
+        return "\"" + Long.toHexString(micros) + "\"";
+    }
+
+    /**
+     * Reads the last updates a client accepts from an If-Match header: one per entity tag of the list, or any for *.
+     * Tags that cannot match any user, such as weak ones, are left out.
+     *
+     * @param ifMatch the header, possibly null.
+     * @return the accepted last updates, empty if any version is accepted, or null if the header is absent.
+     * @throws PreconditionFailedException if none of the tags can match any user.
+     */
+    static List<LocalDateTime> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+        if (ifMatch.strip().equals("*")) {
+            return List.of();
+        }
+        List<LocalDateTime> lastUpdates = new ArrayList<>();
+        for (String tag : ifMatch.split(",")) {
+            var lastUpdate = parse(tag.strip());
+            if (lastUpdate != null) {
+                lastUpdates.add(lastUpdate);
+            }
+        }
+        if (lastUpdates.isEmpty()) {
+            throw new PreconditionFailedException("User was modified");
+        }
+        return lastUpdates;
+    }
+
+    /**
+     * @return the last update of a strong entity tag, or null if the tag cannot be one of ours.
+     */
+    private static LocalDateTime parse(String tag) {
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        try {
+            long micros = Long.parseUnsignedLong(tag.substring(1, tag.length() - 1), 16);
+            return LocalDateTime.ofEpochSecond(
+                    Math.floorDiv(micros, MICROS_PER_SECOND),
+                    (int) Math.floorMod(micros, MICROS_PER_SECOND) * NANOS_PER_MICRO,
+                    ZoneOffset.UTC);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
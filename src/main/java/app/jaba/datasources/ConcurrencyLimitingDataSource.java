@@ -0,0 +1,153 @@
+package app.jaba.datasources;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Limits how many connections can be checked out of the pool at once.
+ * <p>
+ * Each connection holds a permit of a semaphore from the moment it is obtained until it is closed. Callers
+ * beyond the limit park on the semaphore, which costs a virtual thread next to nothing, instead of all
+ * contending for the pool's own handoff. With the limit at the pool size, the pool never has more borrowers
+ * than connections. Waiting longer than the acquire timeout fails the same way the pool does when it is exhausted.
+ * <p>
+ * The semaphore is not fair: a request that releases a connection and needs another one right away gets it back
+ * without a context switch, so requests already in flight finish first. A fair one made the p99 latency several
+ * times worse under load.
+ */
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class ConcurrencyLimitingDataSource extends DelegatingDataSource implements MeterBinder {
+
+    private static final String METRIC_PREFIX = "jdbc.connections.limiter";
+
+    int maxConcurrency;
+    Semaphore permits;
+    long acquireTimeoutNanos;
+    LongAdder timeouts = new LongAdder();
+    @NonFinal
+    volatile Timer waitTimer;
+
+    public ConcurrencyLimitingDataSource(DataSource targetDataSource, int maxConcurrency, Duration acquireTimeout) {
+        super(targetDataSource);
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, false);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return releasingOnClose(obtainTargetDataSource().getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return releasingOnClose(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        waitTimer = Timer.builder(METRIC_PREFIX + ".wait")
+                .description("Time spent waiting for a permit to get a connection")
+                .publishPercentileHistogram()
+                .register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + ".timeouts", timeouts, LongAdder::sum)
+                .description("Connections refused because no permit became available in time")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".queued", permits, Semaphore::getQueueLength)
+                .description("Threads waiting for a permit")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".active", permits, semaphore -> maxConcurrency - semaphore.availablePermits())
+                .description("Connections currently holding a permit")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".max", this, dataSource -> dataSource.maxConcurrency)
+                .description("Connections allowed at once")
+                .register(registry);
+    }
+
+    private void acquire() throws SQLException {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        } finally {
+            var timer = waitTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException("Connection is not available, request timed out after "
+                    + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + "ms waiting for a permit");
+        }
+    }
+
+    /**
+     * Wraps the connection so that its permit is released, once, when it is closed.
+     * Every other call, {@code unwrap} included, goes straight to the connection.
+     */
+    private Connection releasingOnClose(Connection connection) {
+        var closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        try {
+                            connection.close();
+                        } finally {
+                            if (closed.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                        }
+                        return null;
+                    }
+                    if (method.getName().equals("equals") && method.getParameterCount() == 1) {
+                        return proxy == args[0];
+                    }
+                    if (method.getName().equals("hashCode") && method.getParameterCount() == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
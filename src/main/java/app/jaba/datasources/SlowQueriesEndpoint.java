@@ -0,0 +1,43 @@
+package app.jaba.datasources;
+
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.time.Duration;
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Serves what the {@link StatementMonitoringDataSource} recorded at {@code /actuator/slowqueries}.
+ * <p>
+ * Statements and plans hold the values they ran with, so the endpoint is only exposed when asked for, and only on
+ * the management port.
+ */
+@Endpoint(id = "slowqueries")
+@RequiredArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class SlowQueriesEndpoint {
+
+    private static final int TOP_STATEMENTS = 50;
+
+    StatementMonitoringDataSource dataSource;
+
+    @ReadOperation
+    public SlowQueries slowQueries() {
+        return new SlowQueries(dataSource.slowThreshold(), dataSource.topStatements(TOP_STATEMENTS),
+                dataSource.slowStatements());
+    }
+
+    /**
+     * @param threshold  the time over which a statement is slow.
+     * @param statements the statements that took the most time overall, the longest first.
+     * @param slow       the latest slow statements, the most recent first.
+     */
+    public record SlowQueries(Duration threshold,
+                              List<StatementStatistics.Snapshot> statements,
+                              List<SlowStatement> slow) {
+    }
+}
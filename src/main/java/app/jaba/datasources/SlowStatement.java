@@ -0,0 +1,25 @@
+package app.jaba.datasources;
+
+import java.time.Instant;
+
+/**
+ * A statement that took longer than the slow threshold, with its plan once it has been captured.
+ *
+ * @param sql            the statement, with its whitespace collapsed.
+ * @param executedAt     when the statement started.
+ * @param durationMillis how long it took to execute.
+ * @param rows           the rows it returned or changed, or -1 if unknown.
+ * @param plan           the output of {@code EXPLAIN}, analyzed for queries that lock no rows, or null if not captured (yet).
+ * @param planError      why the plan could not be captured, or null.
+ */
+public record SlowStatement(String sql,
+                            Instant executedAt,
+                            double durationMillis,
+                            long rows,
+                            String plan,
+                            String planError) {
+
+    SlowStatement withPlan(String plan, String planError) {
+        return new SlowStatement(sql, executedAt, durationMillis, rows, plan, planError);
+    }
+}
@@ -0,0 +1,406 @@
+package app.jaba.datasources;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Times every statement run through its connections, per SQL text, and keeps the slowest ones with their plan.
+ * <p>
+ * Statements and result sets are wrapped to time each execution and count the rows it returned or changed.
+ * Only the execution is timed: rows read later from a cursor, as an export does, are counted but not timed.
+ * An execution over the slow threshold is logged and kept in a ring buffer of the latest slow statements.
+ * At most once per interval for each statement, its plan is then captured on a background thread by running
+ * {@code EXPLAIN} with the same parameters on a connection of the pool, in a transaction that is rolled back.
+ * Only queries that take no row locks, {@code SELECT} and {@code VALUES}, are run again with
+ * {@code EXPLAIN (ANALYZE, BUFFERS)} to get their actual times: a write would be replayed while the original
+ * transaction, not committed yet, still holds its locks, and would add a second write when the database is
+ * already slow. Other statements only get their estimated plan. When the background thread is busy the plan is
+ * dropped rather than queued.
+ * <p>
+ * On a fast statement the cost is a clock read before and after the execution, a map lookup by SQL text and
+ * a few reflective calls for the wrappers.
+ */
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+public class StatementMonitoringDataSource extends DelegatingDataSource implements MeterBinder {
+
+    private static final String METRIC_PREFIX = "jdbc.statements";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final List<String> EXPLAINABLE = List.of("select", "insert", "update", "delete", "with", "values");
+    private static final List<String> ANALYZABLE = List.of("select", "values");
+    private static final Pattern LOCKING_CLAUSE = Pattern.compile(
+            "\\bfor\\s+(update|no\\s+key\\s+update|share|key\\s+share)\\b", Pattern.CASE_INSENSITIVE);
+
+    long slowThresholdNanos;
+    long planIntervalNanos;
+    long planTimeoutMillis;
+    int maxStatements;
+    Map<String, StatementStatistics> statistics = new ConcurrentHashMap<>();
+    AtomicReferenceArray<SlowStatement> slowStatements;
+    AtomicLong slowCount = new AtomicLong();
+    LongAdder droppedPlans = new LongAdder();
+    ThreadPoolExecutor planner;
+
+    public StatementMonitoringDataSource(DataSource targetDataSource, Duration slowThreshold, Duration planInterval,
+                                         Duration planTimeout, int logSize, int maxStatements) {
+        super(targetDataSource);
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.planIntervalNanos = planInterval.toNanos();
+        this.planTimeoutMillis = planTimeout.toMillis();
+        this.maxStatements = maxStatements;
+        this.slowStatements = new AtomicReferenceArray<>(logSize);
+        this.planner = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(4),
+                runnable -> {
+                    var thread = new Thread(runnable, "slow-statement-planner");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> droppedPlans.increment());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return monitored(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return monitored(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    /**
+     * @return the statements that took the most time overall, the longest first.
+     */
+    public List<StatementStatistics.Snapshot> topStatements(int limit) {
+        return statistics.values().stream()
+                .sorted(Comparator.comparingLong(StatementStatistics::totalNanos).reversed())
+                .limit(limit)
+                .map(StatementStatistics::snapshot)
+                .toList();
+    }
+
+    /**
+     * @return the latest slow statements, the most recent first.
+     */
+    public List<SlowStatement> slowStatements() {
+        long count = slowCount.get();
+        int size = slowStatements.length();
+        List<SlowStatement> latest = new ArrayList<>(size);
+        for (long index = count - 1; index >= Math.max(0, count - size); index--) {
+            var slowStatement = slowStatements.get((int) (index % size));
+            if (slowStatement != null) {
+                latest.add(slowStatement);
+            }
+        }
+        return latest;
+    }
+
+    public Duration slowThreshold() {
+        return Duration.ofNanos(slowThresholdNanos);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(METRIC_PREFIX + ".slow", slowCount, AtomicLong::get)
+                .description("Statements that took longer than the slow threshold")
+                .register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + ".plans.dropped", droppedPlans, LongAdder::sum)
+                .description("Plans of slow statements not captured because the planner was busy")
+                .register(registry);
+    }
+
+    private Connection monitored(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof CallableStatement) {
+                return result;
+            }
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                return proxy(PreparedStatement.class, statement, new StatementHandler(statement, (String) args[0]));
+            }
+            if (result instanceof Statement statement && method.getName().equals("createStatement")) {
+                return proxy(Statement.class, statement, new StatementHandler(statement, null));
+            }
+            return result;
+        });
+    }
+
+    private void record(Execution execution) {
+        long nanos = execution.nanos;
+        boolean slow = nanos >= slowThresholdNanos;
+        var stats = statistics.get(execution.sql);
+        if (stats == null && statistics.size() < maxStatements) {
+            stats = statistics.computeIfAbsent(execution.sql, sql -> new StatementStatistics(collapse(sql)));
+        }
+        if (stats != null) {
+            stats.record(nanos, execution.rows, slow);
+        }
+        if (!slow) {
+            return;
+        }
+
+        var slowStatement = new SlowStatement(collapse(execution.sql), Instant.now().minusNanos(nanos),
+                (double) nanos / TimeUnit.MILLISECONDS.toNanos(1), execution.rows, null, null);
+        long index = slowCount.getAndIncrement() % slowStatements.length();
+        slowStatements.set((int) index, slowStatement);
+        log.warn("Slow statement took {}ms and returned {} rows: {}",
+                TimeUnit.NANOSECONDS.toMillis(nanos), execution.rows, slowStatement.sql());
+
+        if (execution.parameters != null && EXPLAINABLE.contains(firstKeyword(execution.sql))
+                && (stats == null || stats.tryClaimPlan(planIntervalNanos))) {
+            Object[] parameters = snapshot(execution.parameters);
+            planner.execute(() -> capturePlan((int) index, slowStatement, execution.sql, parameters));
+        }
+    }
+
+    private void capturePlan(int index, SlowStatement slowStatement, String sql, Object[] parameters) {
+        String plan = null;
+        String error = null;
+        try (Connection connection = obtainTargetDataSource().getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET LOCAL statement_timeout = " + planTimeoutMillis);
+                    statement.execute("SET LOCAL lock_timeout = " + planTimeoutMillis);
+                }
+                try (PreparedStatement statement = connection.prepareStatement(explain(sql))) {
+                    for (int i = 1; i < parameters.length; i++) {
+                        statement.setObject(i, parameters[i]);
+                    }
+                    var lines = new StringJoiner("\n");
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            lines.add(rs.getString(1));
+                        }
+                    }
+                    plan = lines.toString();
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.debug("Could not capture the plan of a slow statement", e);
+            error = e.getMessage();
+        }
+        slowStatements.compareAndSet(index, slowStatement, slowStatement.withPlan(plan, error));
+    }
+
+    /**
+     * Reads JDBC arrays while the connection they come from is still held.
+     */
+    private static Object[] snapshot(Object[] parameters) {
+        Object[] copy = parameters.clone();
+        for (int i = 0; i < copy.length; i++) {
+            if (copy[i] instanceof Array array) {
+                try {
+                    copy[i] = array.getArray();
+                } catch (SQLException e) {
+                    copy[i] = null;
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Explains a statement, running it only when that takes no locks.
+     */
+    private static String explain(String sql) {
+        boolean analyzable = ANALYZABLE.contains(firstKeyword(sql)) && !LOCKING_CLAUSE.matcher(sql).find();
+        return (analyzable ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + sql;
+    }
+
+    private static String firstKeyword(String sql) {
+        String start = sql.stripLeading();
+        int end = 0;
+        while (end < start.length() && Character.isLetter(start.charAt(end))) {
+            end++;
+        }
+        return start.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static String collapse(String sql) {
+        return WHITESPACE.matcher(sql).replaceAll(" ").strip();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "equals" -> method.getParameterCount() == 1 ? proxy == args[0] : handler.invoke(proxy, method, args);
+                    case "hashCode" -> method.getParameterCount() == 0 ? System.identityHashCode(proxy) : handler.invoke(proxy, method, args);
+                    default -> handler.invoke(proxy, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * One execution of a statement, recorded when its result set or the statement is closed.
+     */
+    private static final class Execution {
+        final String sql;
+        final Object[] parameters;
+        long nanos;
+        long rows = -1;
+
+        Execution(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * Captures the parameters set on a statement and times its executions.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        final Statement statement;
+        final String preparedSql;
+        Object[] parameters = new Object[8];
+        int parameterCount;
+        Execution pending;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index
+                    && method.getDeclaringClass() == PreparedStatement.class) {
+                setParameter(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(parameters, null);
+                parameterCount = 0;
+            } else if (name.startsWith("execute")) {
+                return execute(method, args);
+            } else if (name.equals("close")) {
+                finish();
+            }
+            return StatementMonitoringDataSource.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finish();
+            boolean prepared = args == null || args.length == 0;
+            String sql = prepared ? preparedSql : (String) args[0];
+            if (sql == null) {
+                return StatementMonitoringDataSource.invoke(statement, method, args);
+            }
+            boolean batch = method.getName().equals("executeBatch");
+            var execution = new Execution(sql, prepared && !batch ? Arrays.copyOf(parameters, parameterCount + 1) : null);
+            long started = System.nanoTime();
+            Object result;
+            try {
+                result = StatementMonitoringDataSource.invoke(statement, method, args);
+            } finally {
+                execution.nanos = System.nanoTime() - started;
+            }
+
+            if (result instanceof ResultSet resultSet) {
+                execution.rows = 0;
+                pending = execution;
+                return proxy(ResultSet.class, resultSet, new ResultSetHandler(resultSet, this));
+            }
+            if (result instanceof Integer count) {
+                execution.rows = count;
+            } else if (result instanceof Long count) {
+                execution.rows = count;
+            } else if (result instanceof int[] counts) {
+                execution.rows = Arrays.stream(counts).filter(count -> count > 0).sum();
+            }
+            record(execution);
+            return result;
+        }
+
+        void countRow() {
+            if (pending != null) {
+                pending.rows++;
+            }
+        }
+
+        void finish() {
+            var execution = pending;
+            pending = null;
+            if (execution != null) {
+                record(execution);
+            }
+        }
+
+        private void setParameter(int index, Object value) {
+            if (index >= parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index + 1, parameters.length * 2));
+            }
+            parameters[index] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+    }
+
+    /**
+     * Counts the rows read and closes the execution with the result set.
+     */
+    private record ResultSetHandler(ResultSet resultSet, StatementHandler statement) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = StatementMonitoringDataSource.invoke(resultSet, method, args);
+            switch (method.getName()) {
+                case "next" -> {
+                    if ((Boolean) result) {
+                        statement.countRow();
+                    }
+                }
+                case "close" -> statement.finish();
+                default -> {
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package app.jaba.datasources;
+
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Running totals of one SQL statement, updated without locks by every execution.
+ */
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class StatementStatistics {
+
+    String sql;
+    LongAdder executions = new LongAdder();
+    LongAdder totalNanos = new LongAdder();
+    LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    LongAdder rows = new LongAdder();
+    LongAdder slowExecutions = new LongAdder();
+    AtomicLong lastPlanNanos = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+
+    StatementStatistics(String sql) {
+        this.sql = sql;
+    }
+
+    void record(long nanos, long rowCount, boolean slow) {
+        executions.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        if (slow) {
+            slowExecutions.increment();
+        }
+    }
+
+    /**
+     * Claims the right to capture a plan, at most once per interval.
+     */
+    boolean tryClaimPlan(long intervalNanos) {
+        long now = System.nanoTime();
+        long last = lastPlanNanos.get();
+        return now - last >= intervalNanos && lastPlanNanos.compareAndSet(last, now);
+    }
+
+    long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    Snapshot snapshot() {
+        long count = executions.sum();
+        long total = totalNanos.sum();
+        return new Snapshot(sql, count, toMillis(total), count == 0 ? 0 : toMillis(total / count),
+                toMillis(maxNanos.get()), rows.sum(), slowExecutions.sum());
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param sql            the statement, with its whitespace collapsed.
+     * @param executions     how many times it ran.
+     * @param totalMillis    the time spent executing it, all executions together.
+     * @param meanMillis     the mean time of an execution.
+     * @param maxMillis      the longest execution.
+     * @param rows           the rows returned or changed, all executions together.
+     * @param slowExecutions the executions over the slow threshold.
+     */
+    public record Snapshot(String sql,
+                           long executions,
+                           double totalMillis,
+                           double meanMillis,
+                           double maxMillis,
+                           long rows,
+                           long slowExecutions) {
+    }
+}
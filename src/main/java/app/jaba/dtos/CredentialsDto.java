@@ -0,0 +1,18 @@
+package app.jaba.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.lang.NonNull;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Data Transfer Object for the credentials of a user")
+public record CredentialsDto(
+        @NonNull
+        @Schema(description = "Login of the user, case is ignored", example = "roberto.carlos")
+        String login,
+
+        @NonNull
+        @Schema(description = "Password of the user", example = "password123", writeOnly = true)
+        String password
+) {
+}
@@ -0,0 +1,12 @@
+package app.jaba.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.UUID;
+
+@Schema(description = "Data Transfer Object for credentials that were verified")
+public record CredentialsVerificationDto(
+        @Schema(description = "Unique identifier of the user the credentials belong to", example = "04870a33-235f-4610-a74e-9e057c46a134")
+        UUID userId
+) {
+}
@@ -0,0 +1,15 @@
+package app.jaba.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Data Transfer Object for the availability of a login and an email")
+public record UserAvailabilityDto(
+        @Schema(description = "Whether no user has the login, only present when a login was given")
+        Boolean loginAvailable,
+
+        @Schema(description = "Whether no user has the email, only present when an email was given")
+        Boolean emailAvailable
+) {
+}
@@ -0,0 +1,21 @@
+package app.jaba.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Data Transfer Object for the result of one user of a batch")
+public record UserBatchResultDto(
+        @Schema(description = "Position of the user in the request", example = "0")
+        int index,
+
+        @Schema(description = "HTTP status the user would have got from a single create", example = "201")
+        int status,
+
+        @Schema(description = "User created, when the status is 201")
+        UserDto user,
+
+        @Schema(description = "Reason why the user was rejected", example = "Login already in use")
+        String message
+) {
+}
@@ -0,0 +1,13 @@
+package app.jaba.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Data Transfer Object for a rejected row of a user import")
+public record UserImportRejectionDto(
+        @Schema(description = "Number of the rejected row, starting at 1 and not counting the CSV header", example = "42")
+        long line,
+
+        @Schema(description = "Reason why the row was rejected", example = "Login already in use")
+        String message
+) {
+}
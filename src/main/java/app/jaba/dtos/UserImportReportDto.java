@@ -0,0 +1,18 @@
+package app.jaba.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Data Transfer Object for the report of a user import")
+public record UserImportReportDto(
+        @Schema(description = "Number of rows read", example = "1000")
+        long received,
+
+        @Schema(description = "Number of users imported", example = "998")
+        long imported,
+
+        @Schema(description = "Rows that were not imported")
+        List<UserImportRejectionDto> rejected
+) {
+}
@@ -0,0 +1,17 @@
+package app.jaba.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Data Transfer Object for a CSV row of a user import")
+public record UserImportRowDto(
+        String name,
+        String login,
+        String email,
+        String password,
+        String street,
+        String city,
+        String state,
+        String zip,
+        String number
+) {
+}
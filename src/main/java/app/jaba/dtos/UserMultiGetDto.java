@@ -0,0 +1,16 @@
+package app.jaba.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.UUID;
+
+@Schema(description = "Data Transfer Object for users fetched by id")
+public record UserMultiGetDto(
+        @Schema(description = "Users found, in the order their ids were given")
+        List<UserDto> users,
+
+        @Schema(description = "Ids given for which no user exists, in the order they were given")
+        List<UUID> missing
+) {
+}
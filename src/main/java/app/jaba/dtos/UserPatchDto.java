@@ -0,0 +1,35 @@
+package app.jaba.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Optional;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * A JSON merge patch of a user: a field left out is not changed, a field set to null is removed.
+ * A null field here means it was left out, and an empty one that it was set to null.
+ * <p>
+ * A class rather than a record: Jackson only leaves a field it did not read untouched when it sets it through a setter,
+ * while a record component it did not read becomes {@link Optional#empty()}, the same as a null.
+ */
+@Data
+@FieldDefaults(level = PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Partial update of a user, as a JSON merge patch. Only the fields present are changed")
+public class UserPatchDto {
+
+    @Schema(description = "Name of the user", example = "Roberto Carlos", implementation = String.class)
+    Optional<String> name;
+
+    @Schema(description = "Login of the user", example = "roberto.carlos", implementation = String.class)
+    Optional<String> login;
+
+    @Schema(description = "Email of the user", example = "roberto.carlos@jaba.com", implementation = String.class)
+    Optional<String> email;
+}
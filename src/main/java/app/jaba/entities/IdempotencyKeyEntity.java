@@ -0,0 +1,31 @@
+package app.jaba.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * A request made with an Idempotency-Key, and its response once it completed.
+ */
+@Data
+@FieldDefaults(level = PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyKeyEntity {
+    String key;
+    String fingerprint;
+    String response;
+    /**
+     * The time the key had left when it was read, measured on the database clock like the expiry itself.
+     */
+    Duration expiresIn;
+
+    public boolean isCompleted() {
+        return response != null;
+    }
+}
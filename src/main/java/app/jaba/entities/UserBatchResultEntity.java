@@ -0,0 +1,20 @@
+package app.jaba.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserBatchResultEntity {
+
+    int index;
+    UserEntity user;
+    RuntimeException error;
+
+}
@@ -0,0 +1,22 @@
+package app.jaba.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.UUID;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * The id and password hash of a user, all that is read to verify their credentials.
+ */
+@Data
+@FieldDefaults(level = PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserCredentialsEntity {
+    UUID id;
+    String password;
+}
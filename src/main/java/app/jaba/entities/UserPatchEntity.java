@@ -0,0 +1,29 @@
+package app.jaba.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * The fields to change in a user. A null field is left as it is, an empty one was explicitly set to null.
+ */
+@Data
+@FieldDefaults(level = PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserPatchEntity {
+    UUID id;
+    Optional<String> name;
+    Optional<String> login;
+    Optional<String> email;
+
+    public boolean isEmpty() {
+        return name == null && login == null && email == null;
+    }
+}
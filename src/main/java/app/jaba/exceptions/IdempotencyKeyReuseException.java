@@ -0,0 +1,7 @@
+package app.jaba.exceptions;
+
+public class IdempotencyKeyReuseException extends RuntimeException {
+    public IdempotencyKeyReuseException(String message) {
+        super(message);
+    }
+}
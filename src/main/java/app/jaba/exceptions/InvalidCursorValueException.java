@@ -0,0 +1,7 @@
+package app.jaba.exceptions;
+
+public class InvalidCursorValueException extends RuntimeException {
+    public InvalidCursorValueException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package app.jaba.exceptions;
+
+public class InvalidImportFileException extends RuntimeException {
+    public InvalidImportFileException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package app.jaba.exceptions;
+
+public class PasswordHashingUnavailableException extends RuntimeException {
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package app.jaba.generators;
+
+import java.util.UUID;
+
+/**
+ * Generates the primary keys of new rows.
+ */
+public interface IdGenerator {
+
+    UUID generate();
+}
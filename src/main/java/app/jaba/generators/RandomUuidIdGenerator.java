@@ -0,0 +1,19 @@
+package app.jaba.generators;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs, the ids used before {@link UuidV7IdGenerator}.
+ */
+@Component
+@ConditionalOnProperty(value = "jaba.ids.generator", havingValue = "random")
+public class RandomUuidIdGenerator implements IdGenerator {
+
+    @Override
+    public UUID generate() {
+        return UUID.randomUUID();
+    }
+}
@@ -3,9 +3,8 @@ package app.jaba.mappers;
 import app.jaba.dtos.AddressDto;
 import app.jaba.entities.AddressEntity;
 import org.mapstruct.Mapper;
+import org.springframework.jdbc.core.RowMapper;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.UUID;
 
 @Mapper(componentModel = "spring")
@@ -14,20 +13,25 @@ public interface AddressMapper {
 
     AddressDto map(AddressEntity addressEntity);
 
-    default AddressEntity map(ResultSet rs) throws SQLException {
+    AddressEntity copy(AddressEntity addressEntity);
 
-        var addressId = rs.getObject("address_id", UUID.class);
-        if (addressId != null) {
+    /**
+     * Maps the columns prefixed with {@code address_}, to null when the row has no address.
+     */
+    default RowMapper<AddressEntity> rowMapper() {
+        return IndexedRowMapper.of((rs, columns) -> {
+            var addressId = rs.getObject(columns[0], UUID.class);
+            if (addressId == null) {
+                return null;
+            }
             AddressEntity address = new AddressEntity();
             address.setId(addressId);
-            address.setStreet(rs.getString("address_street"));
-            address.setCity(rs.getString("address_city"));
-            address.setState(rs.getString("address_state"));
-            address.setZip(rs.getString("address_zip"));
-            address.setNumber(rs.getString("address_number"));
+            address.setStreet(rs.getString(columns[1]));
+            address.setCity(rs.getString(columns[2]));
+            address.setState(rs.getString(columns[3]));
+            address.setZip(rs.getString(columns[4]));
+            address.setNumber(rs.getString(columns[5]));
             return address;
-        }
-
-        return null;
+        }, "address_id", "address_street", "address_city", "address_state", "address_zip", "address_number");
     }
 }
@@ -0,0 +1,58 @@
+package app.jaba.mappers;
+
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Row mapper that finds its columns by label once per {@link ResultSet}, then reads every row by index.
+ * <p>
+ * It keeps the positions it found, so each query takes a new one; they are cheap to create.
+ *
+ * @param <T> the type each row is mapped to.
+ */
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public final class IndexedRowMapper<T> implements RowMapper<T> {
+
+    RowReader<T> reader;
+    String[] labels;
+    int[] columns;
+
+    @NonFinal
+    ResultSet resolvedFor;
+
+    private IndexedRowMapper(RowReader<T> reader, String[] labels) {
+        this.reader = reader;
+        this.labels = labels;
+        this.columns = new int[labels.length];
+    }
+
+    /**
+     * @param reader maps a row, given the index of each label in the order they are listed.
+     * @param labels the labels of the columns the reader needs.
+     */
+    public static <T> IndexedRowMapper<T> of(RowReader<T> reader, String... labels) {
+        return new IndexedRowMapper<>(reader, labels);
+    }
+
+    @Override
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (rs != resolvedFor) {
+            for (int i = 0; i < labels.length; i++) {
+                columns[i] = rs.findColumn(labels[i]);
+            }
+            resolvedFor = rs;
+        }
+        return reader.read(rs, columns);
+    }
+
+    @FunctionalInterface
+    public interface RowReader<T> {
+        T read(ResultSet rs, int[] columns) throws SQLException;
+    }
+}
@@ -1,14 +1,27 @@
 package app.jaba.mappers;
 
+import app.jaba.dtos.CredentialsDto;
 import app.jaba.dtos.UpdatePasswordDto;
+import app.jaba.dtos.UserAvailabilityDto;
 import app.jaba.dtos.UserDto;
+import app.jaba.dtos.UserImportRejectionDto;
+import app.jaba.dtos.UserImportReportDto;
+import app.jaba.dtos.UserImportRowDto;
+import app.jaba.dtos.UserMultiGetDto;
+import app.jaba.dtos.UserPatchDto;
+import app.jaba.entities.AddressEntity;
+import app.jaba.entities.CredentialsEntity;
 import app.jaba.entities.UpdatePasswordEntity;
+import app.jaba.entities.UserAvailabilityEntity;
 import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserImportRejectionEntity;
+import app.jaba.entities.UserImportReportEntity;
+import app.jaba.entities.UserMultiGetEntity;
+import app.jaba.entities.UserPatchEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.springframework.jdbc.core.RowMapper;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
@@ -23,15 +36,52 @@ public interface UserMapper {
 
     UpdatePasswordEntity map(UpdatePasswordDto updatePasswordDto);
 
-    @Mapping(target = "address", source = "rs")
-    default UserEntity map(ResultSet rs) throws SQLException {
+    CredentialsEntity map(CredentialsDto credentialsDto);
+
+    @Mapping(target = "id", ignore = true)
+    UserPatchEntity map(UserPatchDto userPatchDto);
+
+    UserEntity copy(UserEntity userEntity);
+
+    UserImportReportDto map(UserImportReportEntity userImportReportEntity);
+
+    UserImportRejectionDto map(UserImportRejectionEntity userImportRejectionEntity);
+
+    UserMultiGetDto map(UserMultiGetEntity userMultiGetEntity);
+
+    UserAvailabilityDto map(UserAvailabilityEntity userAvailabilityEntity);
+
+    default UserEntity map(UserImportRowDto row) {
         UserEntity user = new UserEntity();
-        user.setId(rs.getObject("user_id", UUID.class));
-        user.setName(rs.getString("user_name"));
-        user.setLogin(rs.getString("user_login"));
-        user.setEmail(rs.getString("user_email"));
-        user.setPassword(rs.getString("user_password"));
-        user.setLastUpdate(rs.getObject("user_last_update", LocalDateTime.class));
+        user.setName(row.name());
+        user.setLogin(row.login());
+        user.setEmail(row.email());
+        user.setPassword(row.password());
+        if (row.street() != null || row.city() != null || row.state() != null || row.zip() != null || row.number() != null) {
+            user.setAddress(AddressEntity.builder()
+                    .street(row.street())
+                    .city(row.city())
+                    .state(row.state())
+                    .zip(row.zip())
+                    .number(row.number())
+                    .build());
+        }
         return user;
     }
+
+    /**
+     * Maps the columns prefixed with {@code user_}, leaving the address out.
+     */
+    default RowMapper<UserEntity> rowMapper() {
+        return IndexedRowMapper.of((rs, columns) -> {
+            UserEntity user = new UserEntity();
+            user.setId(rs.getObject(columns[0], UUID.class));
+            user.setName(rs.getString(columns[1]));
+            user.setLogin(rs.getString(columns[2]));
+            user.setEmail(rs.getString(columns[3]));
+            user.setPassword(rs.getString(columns[4]));
+            user.setLastUpdate(rs.getObject(columns[5], LocalDateTime.class));
+            return user;
+        }, "user_id", "user_name", "user_login", "user_email", "user_password", "user_last_update");
+    }
 }
@@ -0,0 +1,98 @@
+package app.jaba.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Times every public method of the JDBC repositories and counts the rows they return, as
+ * {@code repository.invocations} and {@code repository.rows} tagged with repository and method.
+ * The wait for a connection, which inside a transaction happens before the repository is called, is timed
+ * by {@code hikaricp.connections.acquire} and {@code jdbc.connections.limiter.wait}.
+ * <p>
+ * The timers publish histogram buckets, from 100µs so that lookups served by an index still spread over several,
+ * and percentiles can be aggregated across nodes from the Prometheus scrape.
+ * Meters are looked up once per method and outcome, keeping the cost of a call to two clock reads.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(value = "jaba.metrics.repositories.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class RepositoryMetricsAspect {
+
+    private static final String SUCCESS = "success";
+
+    MeterRegistry meterRegistry;
+    Map<Method, Map<String, Timer>> timers = new ConcurrentHashMap<>();
+    Map<Method, DistributionSummary> rows = new ConcurrentHashMap<>();
+
+    @Around("execution(public * app.jaba.repositories.*JdbcRepositoryImpl.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        long started = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            timer(joinPoint, method, SUCCESS).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            countRows(joinPoint, method, result);
+            return result;
+        } catch (Throwable e) {
+            timer(joinPoint, method, e.getClass().getSimpleName()).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timer(ProceedingJoinPoint joinPoint, Method method, String outcome) {
+        return timers.computeIfAbsent(method, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(outcome, key -> Timer.builder("repository.invocations")
+                        .description("Time spent in a repository method")
+                        .tags("repository", repository(joinPoint), "method", method.getName(), "outcome", outcome)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.of(100, ChronoUnit.MICROS))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(meterRegistry));
+    }
+
+    /**
+     * Only methods that return rows are counted: lists, and optionals as zero or one row.
+     */
+    private void countRows(ProceedingJoinPoint joinPoint, Method method, Object result) {
+        long count;
+        if (result instanceof Collection<?> collection) {
+            count = collection.size();
+        } else if (result instanceof Optional<?> optional) {
+            count = optional.isPresent() ? 1 : 0;
+        } else {
+            return;
+        }
+        rows.computeIfAbsent(method, key -> DistributionSummary.builder("repository.rows")
+                        .description("Rows returned by a repository method")
+                        .baseUnit("rows")
+                        .tags("repository", repository(joinPoint), "method", method.getName())
+                        .register(meterRegistry))
+                .record(count);
+    }
+
+    private static String repository(ProceedingJoinPoint joinPoint) {
+        return joinPoint.getSignature().getDeclaringType().getSimpleName();
+    }
+}
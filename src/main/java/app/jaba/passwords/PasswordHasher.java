@@ -0,0 +1,282 @@
+package app.jaba.passwords;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.exceptions.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Hashes and checks passwords with bcrypt, at a configurable cost.
+ * <p>
+ * bcrypt is slow on purpose, so the work runs on a dedicated pool with a fixed number of threads and a bounded
+ * queue instead of on the request threads. Callers wait for their result up to the configured timeout; when the
+ * queue is full or the timeout elapses, a {@link PasswordHashingUnavailableException} is thrown rather than
+ * piling up requests behind the pool.
+ * <p>
+ * Passwords stored before hashing was introduced are plaintext. They are still accepted, compared in constant
+ * time, and reported by {@link #needsRehash(String)} along with hashes of a lower cost than the current one, so that
+ * they can be hashed again once the user has proved they know the password.
+ */
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class PasswordHasher implements SmartLifecycle {
+
+    private static final Pattern BCRYPT_HASH = Pattern.compile("^\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}$");
+
+    BCryptPasswordEncoder encoder;
+    String fixedHash;
+    ThreadPoolExecutor pool;
+    ExecutorService executor;
+    long timeoutNanos;
+
+    @NonFinal
+    volatile boolean running;
+
+    public PasswordHasher(@Value("${jaba.passwords.bcrypt-strength:10}") int strength,
+                          @Value("${jaba.passwords.threads:0}") int threads,
+                          @Value("${jaba.passwords.queue-capacity:256}") int queueCapacity,
+                          @Value("${jaba.passwords.timeout:5s}") Duration timeout,
+                          MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        var threadNumber = new AtomicInteger();
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.fixedHash = encoder.encode("not the password of any user");
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    var thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, "passwords.hasher");
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Hashes a password with a new random salt.
+     *
+     * @param rawPassword the password as given by the user.
+     * @return the bcrypt hash, salt and cost included.
+     * @throws PasswordHashingUnavailableException if the hashing pool is saturated.
+     */
+    public String hash(String rawPassword) {
+        return await(submit(() -> encoder.encode(rawPassword)));
+    }
+
+    /**
+     * Checks a password against the stored one, in constant time.
+     *
+     * @param rawPassword    the password as given by the user.
+     * @param storedPassword the bcrypt hash stored for the user, or the plaintext password of a legacy user.
+     * @return whether the password is the stored one.
+     * @throws PasswordHashingUnavailableException if the hashing pool is saturated.
+     */
+    public boolean matches(String rawPassword, String storedPassword) {
+        if (rawPassword == null || storedPassword == null) {
+            return false;
+        }
+        if (!isHash(storedPassword)) {
+            return MessageDigest.isEqual(rawPassword.getBytes(StandardCharsets.UTF_8),
+                    storedPassword.getBytes(StandardCharsets.UTF_8));
+        }
+        return await(submit(() -> encoder.matches(rawPassword, storedPassword)));
+    }
+
+    /**
+     * Checks a password against a fixed hash at the current cost, for when no user has the login presented,
+     * so that it takes as long as checking the password of a user and the response time does not tell them apart.
+     *
+     * @param rawPassword the password as given.
+     * @throws PasswordHashingUnavailableException if the hashing pool is saturated.
+     */
+    public void simulateMatch(String rawPassword) {
+        await(submit(() -> encoder.matches(rawPassword, fixedHash)));
+    }
+
+    /**
+     * Tells whether a stored password should be replaced by a new hash: it is plaintext, or its cost is lower
+     * than the configured one.
+     *
+     * @param storedPassword the password stored for the user.
+     * @return whether the password should be hashed again.
+     */
+    public boolean needsRehash(String storedPassword) {
+        return storedPassword != null && (!isHash(storedPassword) || encoder.upgradeEncoding(storedPassword));
+    }
+
+    /**
+     * Hashes the passwords of the given users, replacing them in place.
+     * <p>
+     * Up to one password per pool thread is hashed at a time, so large batches keep the pool busy without taking
+     * over its queue.
+     *
+     * @param users the users whose passwords are plaintext.
+     * @throws PasswordHashingUnavailableException if the hashing pool is saturated.
+     */
+    public void hashPasswords(List<UserEntity> users) {
+        int window = pool.getCorePoolSize();
+        Deque<Future<String>> inFlight = new ArrayDeque<>(window);
+        int submitted = 0;
+        try {
+            for (var user : users) {
+                while (inFlight.size() < window && submitted < users.size()) {
+                    var rawPassword = users.get(submitted++).getPassword();
+                    inFlight.add(submit(() -> encoder.encode(rawPassword)));
+                }
+                user.setPassword(await(inFlight.poll()));
+            }
+        } catch (RuntimeException e) {
+            inFlight.forEach(hash -> hash.cancel(true));
+            throw e;
+        }
+    }
+
+    /**
+     * Hashes the passwords of the users of the given items, replacing them in place as the stream is consumed.
+     * <p>
+     * Up to one password per pool thread is hashed ahead of the consumer, so large imports keep the pool busy
+     * without taking over its queue. Users come out in the order they went in.
+     *
+     * @param items  the items holding users whose passwords are plaintext.
+     * @param userOf the user of an item.
+     * @return the same items, with the passwords of their users hashed.
+     * @throws PasswordHashingUnavailableException if the hashing pool is saturated.
+     */
+    public <T> Stream<T> hashPasswords(Stream<T> items, Function<T, UserEntity> userOf) {
+        var source = items.iterator();
+        var window = pool.getCorePoolSize();
+        Deque<PendingHash<T>> inFlight = new ArrayDeque<>(window);
+        Iterator<T> hashed = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !inFlight.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                fill();
+                var pending = inFlight.poll();
+                if (pending == null) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    userOf.apply(pending.item()).setPassword(await(pending.hash()));
+                } catch (RuntimeException e) {
+                    cancelInFlight();
+                    throw e;
+                }
+                return pending.item();
+            }
+
+            private void fill() {
+                try {
+                    while (inFlight.size() < window && source.hasNext()) {
+                        var item = source.next();
+                        var rawPassword = userOf.apply(item).getPassword();
+                        inFlight.add(new PendingHash<>(item, submit(() -> encoder.encode(rawPassword))));
+                    }
+                } catch (RuntimeException e) {
+                    cancelInFlight();
+                    throw e;
+                }
+            }
+
+            private void cancelInFlight() {
+                inFlight.forEach(pending -> pending.hash().cancel(true));
+                inFlight.clear();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(hashed, Spliterator.ORDERED), false)
+                .onClose(items::close);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started before and stopped after the web server, so that the last requests can still hash passwords.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private static boolean isHash(String storedPassword) {
+        return BCRYPT_HASH.matcher(storedPassword).matches();
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new PasswordHashingUnavailableException("Too many password operations in progress, try again later");
+        }
+    }
+
+    private <T> T await(Future<T> result) {
+        try {
+            return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new PasswordHashingUnavailableException("Timed out waiting for a password operation, try again later");
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted waiting for a password operation");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private record PendingHash<T>(T item, Future<String> hash) {
+    }
+}
@@ -1,6 +1,7 @@
 package app.jaba.repositories;
 
 import app.jaba.entities.AddressEntity;
+import app.jaba.generators.IdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.jdbc.core.simple.JdbcClient;
@@ -16,6 +17,7 @@ import java.util.UUID;
 public class AddressJdbcRepositoryImpl implements AddressRepository {
 
     JdbcClient jdbcClient;
+    IdGenerator idGenerator;
 
     @Override
     public Optional<AddressEntity> findById(UUID id) {
@@ -29,7 +31,7 @@ public class AddressJdbcRepositoryImpl implements AddressRepository {
 
     @Override
     public Optional<AddressEntity> save(AddressEntity entity) {
-        UUID id = UUID.randomUUID();
+        UUID id = idGenerator.generate();
         int result = jdbcClient.sql("""
                                             INSERT INTO addresses (id, street, city, state, zip, number, user_id)
                                             VALUES 
@@ -52,44 +54,33 @@ public class AddressJdbcRepositoryImpl implements AddressRepository {
     }
 
     @Override
-    public Optional<AddressEntity> update(AddressEntity entity) {
-        int result =
-                jdbcClient
-                        .sql("""
-                            UPDATE addresses 
-                            SET 
-                                street = :street, 
-                                city = :city,
-                                state = :state,
-                                zip = :zip,
-                                number = :number 
-                            WHERE id = :id
-                        """)
-                        .param("street", entity.getStreet())
-                        .param("city", entity.getCity())
-                        .param("state", entity.getState())
-                        .param("zip", entity.getZip())
-                        .param("number", entity.getNumber())
-                        .param("id", entity.getId())
-                        .update();
+    public List<AddressEntity> saveAll(List<AddressEntity> entities) {
+        if (entities.isEmpty()) {
+            return List.of();
+        }
 
-        if (result != 1)
-            return Optional.empty();
+        entities.forEach(entity -> entity.setId(idGenerator.generate()));
+        jdbcClient.sql("""
+                        INSERT INTO addresses (id, street, city, state, zip, number, user_id)
+                        SELECT * FROM unnest(CAST(:ids AS uuid[]), CAST(:streets AS varchar[]), CAST(:cities AS varchar[]),
+                                             CAST(:states AS varchar[]), CAST(:zips AS varchar[]), CAST(:numbers AS varchar[]),
+                                             CAST(:user_ids AS uuid[]))
+                        """)
+                .param("ids", entities.stream().map(entity -> entity.getId().toString()).toArray(String[]::new))
+                .param("streets", entities.stream().map(AddressEntity::getStreet).toArray(String[]::new))
+                .param("cities", entities.stream().map(AddressEntity::getCity).toArray(String[]::new))
+                .param("states", entities.stream().map(AddressEntity::getState).toArray(String[]::new))
+                .param("zips", entities.stream().map(AddressEntity::getZip).toArray(String[]::new))
+                .param("numbers", entities.stream().map(AddressEntity::getNumber).toArray(String[]::new))
+                .param("user_ids", entities.stream().map(entity -> entity.getUserId().toString()).toArray(String[]::new))
+                .update();
 
-        return Optional.of(entity);
+        return entities;
     }
-    
+
     @Override
     public void deleteById(UUID id) {
         throw new UnsupportedOperationException("Not implemented yet");
     }
 
-    @Override
-    public Optional<AddressEntity> findByUserId(UUID userId) {
-        return jdbcClient.sql("SELECT * FROM addresses WHERE user_id = :user_id")
-                .param("user_id", userId)
-                .query(AddressEntity.class)
-                .optional();
-    }
-
 }
@@ -0,0 +1,123 @@
+package app.jaba.repositories;
+
+import app.jaba.entities.IdempotencyKeyEntity;
+import app.jaba.mappers.IndexedRowMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Stores the requests made with an Idempotency-Key. Times are taken from the database clock, so that every
+ * node agrees on when a lock or a key expires.
+ */
+@Repository
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = lombok.AccessLevel.PRIVATE)
+public class IdempotencyKeyJdbcRepositoryImpl implements IdempotencyKeyRepository {
+
+    /**
+     * The time left before expires_at, so that callers never compare it with a clock other than the database's.
+     */
+    private static final String EXPIRES_IN = "CAST(EXTRACT(EPOCH FROM expires_at - LOCALTIMESTAMP) * 1000 AS BIGINT) AS expires_in";
+
+    JdbcClient jdbcClient;
+
+    /**
+     * Claims a key for a request: inserts it, or takes it over from a request with the same fingerprint that
+     * did not complete before its lock expired.
+     *
+     * @param owner identifies the request, which must give it to complete or release the key.
+     * @return whether the caller now owns the key and must run the request.
+     */
+    @Override
+    public boolean acquire(String key, String fingerprint, UUID owner, Duration lease, Duration ttl) {
+        return jdbcClient.sql("""
+                        INSERT INTO idempotency_keys (idempotency_key, fingerprint, locked_by, locked_until, expires_at)
+                        VALUES (:key, :fingerprint, :owner, LOCALTIMESTAMP + :lease * INTERVAL '1 millisecond', LOCALTIMESTAMP + :ttl * INTERVAL '1 millisecond')
+                        ON CONFLICT (idempotency_key) DO UPDATE
+                        SET locked_by = EXCLUDED.locked_by, locked_until = EXCLUDED.locked_until, expires_at = EXCLUDED.expires_at
+                        WHERE idempotency_keys.response IS NULL
+                          AND idempotency_keys.locked_until < LOCALTIMESTAMP
+                          AND idempotency_keys.fingerprint = EXCLUDED.fingerprint
+                        """)
+                .param("key", key)
+                .param("fingerprint", fingerprint)
+                .param("owner", owner)
+                .param("lease", lease.toMillis())
+                .param("ttl", ttl.toMillis())
+                .update() == 1;
+    }
+
+    @Override
+    public Optional<IdempotencyKeyEntity> findByKey(String key) {
+        return jdbcClient.sql("SELECT idempotency_key, fingerprint, response, " + EXPIRES_IN + " FROM idempotency_keys WHERE idempotency_key = :key")
+                .param("key", key)
+                .query(rowMapper())
+                .optional();
+    }
+
+    /**
+     * Stores the response of the request that owns the key, in the transaction of the request when there is one.
+     *
+     * @return the completed key, or empty if it was swept or taken over meanwhile.
+     */
+    @Override
+    public Optional<IdempotencyKeyEntity> complete(String key, UUID owner, String response) {
+        return jdbcClient.sql("""
+                        UPDATE idempotency_keys SET response = :response
+                        WHERE idempotency_key = :key AND locked_by = :owner AND response IS NULL
+                        RETURNING idempotency_key, fingerprint, response, %s
+                        """.formatted(EXPIRES_IN))
+                .param("key", key)
+                .param("owner", owner)
+                .param("response", response)
+                .query(rowMapper())
+                .optional();
+    }
+
+    /**
+     * Gives up a key whose request failed, so that it can be retried, unless another request has taken it over.
+     */
+    @Override
+    public void release(String key, UUID owner) {
+        jdbcClient.sql("DELETE FROM idempotency_keys WHERE idempotency_key = :key AND locked_by = :owner AND response IS NULL")
+                .param("key", key)
+                .param("owner", owner)
+                .update();
+    }
+
+    /**
+     * Deletes up to {@code limit} expired keys, so that each statement only holds a few locks.
+     *
+     * @return the number of keys deleted.
+     */
+    @Override
+    public int deleteExpired(int limit) {
+        return jdbcClient.sql("""
+                        DELETE FROM idempotency_keys
+                        WHERE idempotency_key IN (
+                            SELECT idempotency_key FROM idempotency_keys
+                            WHERE expires_at < LOCALTIMESTAMP
+                            LIMIT :limit
+                            FOR UPDATE SKIP LOCKED
+                        )
+                        """)
+                .param("limit", limit)
+                .update();
+    }
+
+    private static RowMapper<IdempotencyKeyEntity> rowMapper() {
+        return IndexedRowMapper.of((rs, columns) -> new IdempotencyKeyEntity(
+                rs.getString(columns[0]),
+                rs.getString(columns[1]),
+                rs.getString(columns[2]),
+                Duration.ofMillis(rs.getLong(columns[3]))
+        ), "idempotency_key", "fingerprint", "response", "expires_in");
+    }
+}
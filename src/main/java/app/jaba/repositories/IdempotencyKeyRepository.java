@@ -0,0 +1,20 @@
+package app.jaba.repositories;
+
+import app.jaba.entities.IdempotencyKeyEntity;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface IdempotencyKeyRepository {
+
+    boolean acquire(String key, String fingerprint, UUID owner, Duration lease, Duration ttl);
+
+    Optional<IdempotencyKeyEntity> findByKey(String key);
+
+    Optional<IdempotencyKeyEntity> complete(String key, UUID owner, String response);
+
+    void release(String key, UUID owner);
+
+    int deleteExpired(int limit);
+}
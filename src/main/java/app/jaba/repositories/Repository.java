@@ -11,7 +11,7 @@ public interface Repository<T> {
 
     Optional<T> save(T entity);
 
-    Optional<T> update(T entity);
+    List<T> saveAll(List<T> entities);
 
     void deleteById(UUID id);
 }
@@ -0,0 +1,113 @@
+package app.jaba.repositories;
+
+import app.jaba.caches.CredentialsCache;
+import app.jaba.caches.SingleFlight;
+import app.jaba.caches.UserCache;
+import app.jaba.entities.UserCredentialsEntity;
+import app.jaba.entities.UserEntity;
+import app.jaba.mappers.UserMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.Delegate;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Coalesces concurrent identical lookups of a user by id, login or email, and of their credentials by login, into a
+ * single query, with a {@link SingleFlight} per lookup. Everything else goes straight to {@link UserJdbcRepositoryImpl}.
+ * <p>
+ * Callers inside a read-write transaction always run their own query, since they must see their own writes.
+ * <p>
+ * Lookups by id and of credentials sit behind {@link UserCache} and {@link CredentialsCache}, so they are only
+ * coalesced with a query that started after the last eviction from the cache: a caller that missed because of the
+ * eviction of a committed write must not get, and cache, the row as it was before it.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(value = "jaba.users.single-flight.enabled", havingValue = "true", matchIfMissing = true)
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class SingleFlightUserRepository implements UserRepository {
+
+    @Delegate(excludes = CoalescedLookups.class)
+    UserRepository delegate;
+    UserCache userCache;
+    CredentialsCache credentialsCache;
+    SingleFlight<Flight<UUID>, Optional<UserEntity>> byId;
+    SingleFlight<String, Optional<UUID>> byLogin;
+    SingleFlight<String, Optional<UUID>> byEmail;
+    SingleFlight<Flight<String>, Optional<UserCredentialsEntity>> credentialsByLogin;
+
+    public SingleFlightUserRepository(UserJdbcRepositoryImpl delegate,
+                                      UserCache userCache,
+                                      CredentialsCache credentialsCache,
+                                      UserMapper userMapper,
+                                      MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.userCache = userCache;
+        this.credentialsCache = credentialsCache;
+        this.byId = new SingleFlight<>("users.findById", user -> user.map(userMapper::copy), meterRegistry);
+        this.byLogin = new SingleFlight<>("users.findIdByLogin", UnaryOperator.identity(), meterRegistry);
+        this.byEmail = new SingleFlight<>("users.findIdByEmail", UnaryOperator.identity(), meterRegistry);
+        this.credentialsByLogin = new SingleFlight<>("users.findCredentialsByLogin",
+                credentials -> credentials.map(found -> new UserCredentialsEntity(found.getId(), found.getPassword())),
+                meterRegistry);
+    }
+
+    @Override
+    public Optional<UserEntity> findById(UUID id) {
+        return load(byId, new Flight<>(id, userCache.epoch()), () -> delegate.findById(id));
+    }
+
+    /**
+     * Logins and emails are matched ignoring case, so lookups that only differ in case are coalesced too.
+     */
+    @Override
+    public Optional<UUID> findIdByLogin(String login) {
+        return load(byLogin, login.toLowerCase(Locale.ROOT), () -> delegate.findIdByLogin(login));
+    }
+
+    @Override
+    public Optional<UUID> findIdByEmail(String email) {
+        return load(byEmail, email.toLowerCase(Locale.ROOT), () -> delegate.findIdByEmail(email));
+    }
+
+    @Override
+    public Optional<UserCredentialsEntity> findCredentialsByLogin(String login) {
+        return load(credentialsByLogin, new Flight<>(login.toLowerCase(Locale.ROOT), credentialsCache.epoch()),
+                () -> delegate.findCredentialsByLogin(login));
+    }
+
+    private static <K, V> V load(SingleFlight<K, V> singleFlight, K key, Supplier<V> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return loader.get();
+        }
+        return singleFlight.load(key, loader);
+    }
+
+    /**
+     * A lookup, and the epoch of the cache in front of it when it started.
+     */
+    private record Flight<K>(K key, long epoch) {
+    }
+
+    private interface CoalescedLookups {
+        Optional<UserEntity> findById(UUID id);
+
+        Optional<UUID> findIdByLogin(String login);
+
+        Optional<UUID> findIdByEmail(String email);
+
+        Optional<UserCredentialsEntity> findCredentialsByLogin(String login);
+    }
+}
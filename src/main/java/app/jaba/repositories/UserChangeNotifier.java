@@ -0,0 +1,59 @@
+package app.jaba.repositories;
+
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Publishes changes to users on the {@value #CHANNEL} Postgres channel, so every node can drop
+ * what it cached about them. Postgres only delivers the notification once the surrounding transaction commits.
+ * <p>
+ * The payload is a user id, or several separated by {@value #SEPARATOR} when users are inserted in bulk.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = lombok.AccessLevel.PRIVATE)
+public class UserChangeNotifier {
+
+    public static final String CHANNEL = "user_changed";
+    public static final String SEPARATOR = ",";
+
+    /**
+     * 200 ids and their separators take 7399 bytes, under the 8000 bytes Postgres allows in a payload.
+     */
+    public static final int IDS_PER_NOTIFICATION = 200;
+
+    JdbcClient jdbcClient;
+
+    public void notifyChanged(UUID userId) {
+        jdbcClient.sql("SELECT pg_notify(:channel, :payload)")
+                .param("channel", CHANNEL)
+                .param("payload", userId.toString())
+                .query()
+                .singleColumn();
+    }
+
+    /**
+     * Publishes the given users with as few notifications as the payload size allows.
+     */
+    public void notifyChanged(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        jdbcClient.sql("""
+                        SELECT pg_notify(:channel, string_agg(id, :separator))
+                        FROM unnest(CAST(:ids AS text[])) WITH ORDINALITY AS ids(id, position)
+                        GROUP BY (position - 1) / :ids_per_notification
+                        """)
+                .param("channel", CHANNEL)
+                .param("separator", SEPARATOR)
+                .param("ids", userIds.stream().map(UUID::toString).toArray(String[]::new))
+                .param("ids_per_notification", IDS_PER_NOTIFICATION)
+                .query()
+                .singleColumn();
+    }
+}
@@ -0,0 +1,192 @@
+package app.jaba.repositories;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserImportRejectionEntity;
+import app.jaba.entities.UserImportRowEntity;
+import app.jaba.generators.IdGenerator;
+import app.jaba.mappers.IndexedRowMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Loads users through a temporary staging table filled with COPY, then merges it into users and addresses
+ * with set-based statements. Every method must run in the same transaction, since the staging table is
+ * dropped when it commits.
+ */
+@Repository
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = lombok.AccessLevel.PRIVATE)
+public class UserImportJdbcRepositoryImpl implements UserImportRepository {
+
+    private static final String STAGING_TABLE = "users_import";
+
+    private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+            .enable(CsvGenerator.Feature.ALWAYS_QUOTE_EMPTY_STRINGS)
+            .build();
+
+    private static final CsvSchema STAGING_SCHEMA = CsvSchema.builder()
+            .addColumns(Arrays.asList("line", "user_id", "name", "login", "email", "password",
+                    "address_id", "street", "city", "state", "zip", "number"), CsvSchema.ColumnType.STRING)
+            .build();
+
+    JdbcClient jdbcClient;
+    DataSource dataSource;
+    IdGenerator idGenerator;
+
+    @Override
+    public void createStagingTable() {
+        jdbcClient.sql("""
+                        CREATE TEMP TABLE %s (
+                            line BIGINT NOT NULL,
+                            user_id UUID NOT NULL,
+                            name VARCHAR(255),
+                            login VARCHAR(255),
+                            email VARCHAR(255),
+                            password VARCHAR(255),
+                            address_id UUID,
+                            street VARCHAR(255),
+                            city VARCHAR(255),
+                            state VARCHAR(255),
+                            zip VARCHAR(255),
+                            number VARCHAR(255)
+                        ) ON COMMIT DROP
+                        """.formatted(STAGING_TABLE))
+                .update();
+    }
+
+    @Override
+    public long copyToStagingTable(Stream<UserImportRowEntity> rows) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        String sql = "COPY %s FROM STDIN WITH (FORMAT csv)".formatted(STAGING_TABLE);
+        AtomicLong copied = new AtomicLong();
+        try (var copyStream = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql);
+             SequenceWriter writer = CSV_MAPPER.writer(STAGING_SCHEMA).writeValues(copyStream)) {
+            rows.forEach(row -> {
+                try {
+                    writer.write(toStagingRow(row));
+                    copied.incrementAndGet();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException("Copy to " + STAGING_TABLE, sql, e);
+        } catch (IOException | UncheckedIOException e) {
+            throw new DataAccessResourceFailureException("Error copying to " + STAGING_TABLE, e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        return copied.get();
+    }
+
+    @Override
+    public long mergeStagingTable() {
+        // Rows are inserted in file order, so when two rows share a login or email the first one wins.
+        // Counting the notifications is what makes Postgres evaluate them, it skips unreferenced SELECTs.
+        return jdbcClient.sql("""
+                        WITH inserted AS (
+                            INSERT INTO users (id, name, login, email, password, last_update)
+                            SELECT user_id, name, login, email, password, :last_update
+                            FROM %1$s
+                            ORDER BY line
+                            ON CONFLICT DO NOTHING
+                            RETURNING id
+                        ), inserted_addresses AS (
+                            INSERT INTO addresses (id, street, city, state, zip, number, user_id)
+                            SELECT s.address_id, s.street, s.city, s.state, s.zip, s.number, s.user_id
+                            FROM %1$s s
+                            JOIN inserted i ON i.id = s.user_id
+                            WHERE s.address_id IS NOT NULL
+                        ), notified AS (
+                            SELECT pg_notify(:channel, string_agg(CAST(id AS text), :separator))
+                            FROM (SELECT id, row_number() OVER () AS position FROM inserted) ids
+                            GROUP BY (position - 1) / :ids_per_notification
+                        )
+                        SELECT (SELECT count(*) FROM inserted) AS imported, (SELECT count(*) FROM notified) AS notifications
+                        """.formatted(STAGING_TABLE))
+                .param("last_update", LocalDateTime.now())
+                .param("channel", UserChangeNotifier.CHANNEL)
+                .param("separator", UserChangeNotifier.SEPARATOR)
+                .param("ids_per_notification", UserChangeNotifier.IDS_PER_NOTIFICATION)
+                .query(IndexedRowMapper.of((rs, columns) -> rs.getLong(columns[0]), "imported"))
+                .single();
+    }
+
+    /**
+     * Reads the id, login and email of the staged users that the merge inserted.
+     */
+    @Override
+    public void streamMergedFromStagingTable(Consumer<UserEntity> action) {
+        jdbcClient.sql("""
+                        SELECT s.user_id, s.login, s.email
+                        FROM %1$s s
+                        WHERE EXISTS (SELECT 1 FROM users u WHERE u.id = s.user_id)
+                        """.formatted(STAGING_TABLE))
+                .query((ResultSet rs) -> {
+                    var user = new UserEntity();
+                    user.setId(rs.getObject(1, UUID.class));
+                    user.setLogin(rs.getString(2));
+                    user.setEmail(rs.getString(3));
+                    action.accept(user);
+                });
+    }
+
+    @Override
+    public List<UserImportRejectionEntity> findRejectedInStagingTable() {
+        return jdbcClient.sql("""
+                        SELECT s.line,
+                               EXISTS (SELECT 1 FROM users u WHERE lower(u.login) = lower(s.login)) AS login_in_use
+                        FROM %1$s s
+                        WHERE NOT EXISTS (SELECT 1 FROM users u WHERE u.id = s.user_id)
+                        ORDER BY s.line
+                        """.formatted(STAGING_TABLE))
+                .query(IndexedRowMapper.of((rs, columns) -> new UserImportRejectionEntity(
+                        rs.getLong(columns[0]),
+                        rs.getBoolean(columns[1]) ? "Login already in use" : "Email already in use"), "line", "login_in_use"))
+                .list();
+    }
+
+    private Object[] toStagingRow(UserImportRowEntity row) {
+        var user = row.getUser();
+        var address = user.getAddress();
+        return new Object[]{
+                row.getLine(),
+                user.getId(),
+                user.getName(),
+                user.getLogin(),
+                user.getEmail(),
+                user.getPassword(),
+                address == null ? null : idGenerator.generate(),
+                address == null ? null : address.getStreet(),
+                address == null ? null : address.getCity(),
+                address == null ? null : address.getState(),
+                address == null ? null : address.getZip(),
+                address == null ? null : address.getNumber()
+        };
+    }
+}
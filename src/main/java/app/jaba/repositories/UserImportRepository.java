@@ -0,0 +1,22 @@
+package app.jaba.repositories;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserImportRejectionEntity;
+import app.jaba.entities.UserImportRowEntity;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public interface UserImportRepository {
+
+    void createStagingTable();
+
+    long copyToStagingTable(Stream<UserImportRowEntity> rows);
+
+    long mergeStagingTable();
+
+    void streamMergedFromStagingTable(Consumer<UserEntity> action);
+
+    List<UserImportRejectionEntity> findRejectedInStagingTable();
+}
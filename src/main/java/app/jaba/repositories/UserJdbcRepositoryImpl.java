@@ -1,150 +1,487 @@
 package app.jaba.repositories;
 
+import app.jaba.entities.AddressEntity;
+import app.jaba.entities.UserCredentialsEntity;
 import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserPatchEntity;
+import app.jaba.exceptions.EmailAlreadyInUseException;
+import app.jaba.exceptions.LoginAlreadyInUseException;
+import app.jaba.generators.IdGenerator;
 import app.jaba.mappers.AddressMapper;
+import app.jaba.mappers.IndexedRowMapper;
 import app.jaba.mappers.UserMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.stereotype.Repository;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Repository
 @RequiredArgsConstructor
 @FieldDefaults(makeFinal = true, level = lombok.AccessLevel.PRIVATE)
 public class UserJdbcRepositoryImpl implements UserRepository {
 
+    private static final String LOGIN_UNIQUE_INDEX = "users_login_unique_idx";
+    private static final String EMAIL_UNIQUE_INDEX = "users_email_unique_idx";
+
+    private static final String SELECT_USER_WITH_ADDRESS = """
+                SELECT u.id AS user_id, u.name AS user_name, u.login AS user_login, u.email AS user_email, u.password AS user_password, u.last_update AS user_last_update,
+                       a.id AS address_id, a.street AS address_street, a.city AS address_city, a.state AS address_state, a.zip AS address_zip, a.number AS address_number
+                FROM users u
+                LEFT JOIN addresses a ON u.id = a.user_id
+            """;
+
     JdbcClient jdbcClient;
+    JdbcTemplate jdbcTemplate;
+    UserChangeNotifier userChangeNotifier;
+    IdGenerator idGenerator;
     UserMapper userMapper;
     AddressMapper addressMapper;
 
     @Override
     public Optional<UserEntity> findById(UUID id) {
-        String sql = """               
-                 SELECT u.id AS user_id, u.name AS user_name, u.login AS user_login, u.email AS user_email, u.password AS user_password, u.last_update AS user_last_update,
-                        a.id AS address_id, a.street AS address_street, a.city AS address_city, a.state AS address_state, a.zip AS address_zip, a.number AS address_number                          \s
-                 FROM users u
-                 LEFT JOIN addresses a ON u.id = a.user_id
+        String sql = SELECT_USER_WITH_ADDRESS + """
                  WHERE u.id = ?
                 """;
         return jdbcClient
                 .sql(sql)
                 .param(id)
-                .query(rs -> {
-                    if (!rs.next()) {
-                        return Optional.empty();
-                    }
-                    var user = userMapper.map(rs);
-                    user.setAddress(addressMapper.map(rs));
-
-                    return Optional.of(user);
-                });
+                .query(userWithAddressRowMapper())
+                .optional();
     }
 
+    /**
+     * Finds the users with the given ids in a single query, in no particular order.
+     */
+    @Override
+    public List<UserEntity> findAllByIds(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String sql = SELECT_USER_WITH_ADDRESS + """
+                 WHERE u.id = ANY(CAST(:ids AS uuid[]))
+                """;
+        return jdbcClient.sql(sql)
+                .param("ids", ids.stream().map(UUID::toString).toArray(String[]::new))
+                .query(userWithAddressRowMapper())
+                .list();
+    }
 
     @Override
     public List<UserEntity> findAll(int size, int offset) {
-        String sql = """
-                    SELECT u.id AS user_id, u.name AS user_name, u.login AS user_login, u.email AS user_email, u.password AS user_password, u.last_update AS user_last_update,
-                           a.id AS address_id, a.street AS address_street, a.city AS address_city, a.state AS address_state, a.zip AS address_zip, a.number AS address_number
-                    FROM users u
-                    LEFT JOIN addresses a ON u.id = a.user_id
-                    GROUP BY u.id, a.id
+        String sql = SELECT_USER_WITH_ADDRESS + """
+                    ORDER BY u.id
                     LIMIT :size OFFSET :offset
                 """;
 
         return jdbcClient.sql(sql)
                 .param("size", size)
                 .param("offset", offset)
-                .query((rs, rowNum) -> {
-                    var user = userMapper.map(rs);
-                    user.setAddress(addressMapper.map(rs));
-                    return user;
-                })
+                .query(userWithAddressRowMapper())
                 .list();
     }
 
+    @Override
+    public List<UserEntity> findAllAfter(UUID after, int size) {
+        if (after == null) {
+            return findAll(size, 0);
+        }
+
+        String sql = SELECT_USER_WITH_ADDRESS + """
+                    WHERE u.id > :after
+                    ORDER BY u.id
+                    LIMIT :size
+                """;
+
+        return jdbcClient.sql(sql)
+                .param("after", after)
+                .param("size", size)
+                .query(userWithAddressRowMapper())
+                .list();
+    }
+
+    /**
+     * Reads every user through a server-side cursor, holding only one fetch of rows in memory at a time.
+     * Postgres only uses a cursor inside a transaction, so this must be called within one.
+     */
+    @Override
+    public void streamAll(int fetchSize, Consumer<UserEntity> action) {
+        var rowMapper = userWithAddressRowMapper();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_USER_WITH_ADDRESS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, (ResultSet rs) -> action.accept(rowMapper.mapRow(rs, rs.getRow())));
+    }
+
     @Override
     public Optional<UserEntity> save(UserEntity userEntity) {
-        UUID id = UUID.randomUUID();
-        LocalDateTime lastUpdate = LocalDateTime.now();
-        int result = jdbcClient.sql("""
-                        INSERT INTO users (id, name, login, email, password, last_update)
-                        VALUES 
-                        (:id, :name, :login, :email, :password, :last_update)
-                        """)
-                .param("id", id)
-                .param("name", userEntity.getName())
-                .param("login", userEntity.getLogin())
-                .param("email", userEntity.getEmail())
-                .param("password", userEntity.getPassword())
-                .param("last_update", lastUpdate)
-                .update();
+        UUID id = idGenerator.generate();
+        LocalDateTime lastUpdate = now();
+        int result;
+        try {
+            result = jdbcClient.sql("""
+                            INSERT INTO users (id, name, login, email, password, last_update)
+                            VALUES 
+                            (:id, :name, :login, :email, :password, :last_update)
+                            """)
+                    .param("id", id)
+                    .param("name", userEntity.getName())
+                    .param("login", userEntity.getLogin())
+                    .param("email", userEntity.getEmail())
+                    .param("password", userEntity.getPassword())
+                    .param("last_update", lastUpdate)
+                    .update();
+        } catch (DuplicateKeyException e) {
+            throw translateDuplicateKey(e);
+        }
 
         if (result != 1)
             return Optional.empty();
 
         userEntity.setId(id);
         userEntity.setLastUpdate(lastUpdate);
+        userChangeNotifier.notifyChanged(id);
         return Optional.of(userEntity);
     }
 
+    /**
+     * Inserts the given users, with the ids they already carry, in a single statement.
+     * Users whose login or email is already taken are skipped instead of failing the whole statement.
+     *
+     * @return the users that were inserted.
+     */
     @Override
-    public Optional<UserEntity> update(UserEntity userEntity) {
-        LocalDateTime lastUpdate = LocalDateTime.now();
-        int result = this.jdbcClient
-                .sql("UPDATE users SET name = :name, login = :login, email = :email, last_update = :last_update WHERE id = :id")
-                .param("name", userEntity.getName())
-                .param("login", userEntity.getLogin())
-                .param("email", userEntity.getEmail())
+    public List<UserEntity> saveAll(List<UserEntity> userEntities) {
+        if (userEntities.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDateTime lastUpdate = now();
+        String sql = """
+                INSERT INTO users (id, name, login, email, password, last_update)
+                SELECT id, name, login, email, password, :last_update
+                FROM unnest(CAST(:ids AS uuid[]), CAST(:names AS varchar[]), CAST(:logins AS varchar[]),
+                            CAST(:emails AS varchar[]), CAST(:passwords AS varchar[])) AS u(id, name, login, email, password)
+                ON CONFLICT DO NOTHING
+                RETURNING id
+                """;
+
+        Set<UUID> inserted = new HashSet<>(jdbcClient.sql(sql)
                 .param("last_update", lastUpdate)
-                .param("id", userEntity.getId())
-                .update();
+                .param("ids", userEntities.stream().map(user -> user.getId().toString()).toArray(String[]::new))
+                .param("names", userEntities.stream().map(UserEntity::getName).toArray(String[]::new))
+                .param("logins", userEntities.stream().map(UserEntity::getLogin).toArray(String[]::new))
+                .param("emails", userEntities.stream().map(UserEntity::getEmail).toArray(String[]::new))
+                .param("passwords", userEntities.stream().map(UserEntity::getPassword).toArray(String[]::new))
+                .query(UUID.class)
+                .list());
 
-        if (result != 1)
-            return Optional.empty();
+        var saved = userEntities.stream()
+                .filter(user -> inserted.contains(user.getId()))
+                .toList();
+        saved.forEach(user -> user.setLastUpdate(lastUpdate));
+        userChangeNotifier.notifyChanged(inserted);
+        return saved;
+    }
 
-        userEntity.setLastUpdate(lastUpdate);
-        return Optional.of(userEntity);
+    @Override
+    public Optional<UserEntity> update(UserEntity userEntity) {
+        return update(userEntity, null);
+    }
+
+    /**
+     * Updates the user and upserts their address in a single statement, returning the row as it was left.
+     * The address keeps its id when the user already had one, and is inserted otherwise.
+     *
+     * @param expectedLastUpdates the last updates the user may still have, or null or empty to update it regardless.
+     * @return the updated user with their address, or empty if the user does not exist or was updated since.
+     */
+    @Override
+    public Optional<UserEntity> update(UserEntity userEntity, List<LocalDateTime> expectedLastUpdates) {
+        String sql = """
+                WITH updated_user AS (
+                    UPDATE users SET name = :name, login = :login, email = :email, last_update = :last_update
+                    WHERE id = :id%s
+                    RETURNING id, name, login, email, password, last_update
+                ), upserted_address AS (
+                    INSERT INTO addresses (id, street, city, state, zip, number, user_id)
+                    SELECT :address_id, :street, :city, :state, :zip, :number, id
+                    FROM updated_user
+                    WHERE CAST(:street AS varchar) IS NOT NULL
+                    ON CONFLICT (user_id) DO UPDATE
+                    SET street = EXCLUDED.street, city = EXCLUDED.city, state = EXCLUDED.state, zip = EXCLUDED.zip, number = EXCLUDED.number
+                    RETURNING id, street, city, state, zip, number, user_id
+                )
+                SELECT u.id AS user_id, u.name AS user_name, u.login AS user_login, u.email AS user_email, u.password AS user_password, u.last_update AS user_last_update,
+                       a.id AS address_id, a.street AS address_street, a.city AS address_city, a.state AS address_state, a.zip AS address_zip, a.number AS address_number
+                FROM updated_user u
+                LEFT JOIN upserted_address a ON u.id = a.user_id
+                """.formatted(lastUpdateCondition(expectedLastUpdates));
+
+        var address = Optional.ofNullable(userEntity.getAddress()).orElseGet(AddressEntity::new);
+        Optional<UserEntity> updated;
+        try {
+            updated = jdbcClient.sql(sql)
+                    .param("id", userEntity.getId())
+                    .param("name", userEntity.getName())
+                    .param("login", userEntity.getLogin())
+                    .param("email", userEntity.getEmail())
+                    .param("last_update", now())
+                    .param("address_id", idGenerator.generate())
+                    .param("street", address.getStreet())
+                    .param("city", address.getCity())
+                    .param("state", address.getState())
+                    .param("zip", address.getZip())
+                    .param("number", address.getNumber())
+                    .param("expected_last_updates", lastUpdates(expectedLastUpdates))
+                    .query(userWithAddressRowMapper())
+                    .optional();
+        } catch (DuplicateKeyException e) {
+            throw translateDuplicateKey(e);
+        }
+
+        updated.ifPresent(user -> {
+            if (user.getAddress() != null) {
+                user.getAddress().setUserId(user.getId());
+            }
+            userChangeNotifier.notifyChanged(user.getId());
+        });
+        return updated;
     }
 
     @Override
     public void deleteById(UUID id) {
-        jdbcClient.sql("DELETE FROM users WHERE id = :id")
+        deleteById(id, null);
+    }
+
+    /**
+     * @param expectedLastUpdates the last updates the user may still have, or null or empty to delete it regardless.
+     * @return whether the user was deleted, false if it does not exist or was updated since.
+     */
+    @Override
+    public boolean deleteById(UUID id, List<LocalDateTime> expectedLastUpdates) {
+        int result = jdbcClient.sql("DELETE FROM users WHERE id = :id" + lastUpdateCondition(expectedLastUpdates))
                 .param("id", id)
+                .param("expected_last_updates", lastUpdates(expectedLastUpdates))
                 .update();
+
+        if (result == 1)
+            userChangeNotifier.notifyChanged(id);
+        return result == 1;
+    }
+
+    @Override
+    public long count() {
+        return jdbcClient.sql("SELECT count(*) FROM users")
+                .query(Long.class)
+                .single();
     }
 
 
+    /**
+     * Exact, case-insensitive match served by the unique index on {@code lower(login)}.
+     */
     @Override
-    public Optional<UserEntity> findByLogin(String login) {
-        return jdbcClient.sql("SELECT * FROM users WHERE login LIKE :login")
+    public Optional<UUID> findIdByLogin(String login) {
+        return jdbcClient.sql("SELECT id FROM users WHERE lower(login) = lower(:login)")
                 .param("login", login)
-                .query(UserEntity.class)
+                .query(UUID.class)
                 .optional();
     }
 
+    /**
+     * Exact, case-insensitive match served by the unique index on {@code lower(login)}, reading only the id and
+     * the password hash.
+     */
     @Override
-    public Optional<UserEntity> findByEmail(String email) {
-        return jdbcClient.sql("SELECT * FROM users WHERE email LIKE :email")
+    public Optional<UserCredentialsEntity> findCredentialsByLogin(String login) {
+        return jdbcClient.sql("SELECT id, password FROM users WHERE lower(login) = lower(:login)")
+                .param("login", login)
+                .query((rs, rowNum) -> new UserCredentialsEntity(rs.getObject(1, UUID.class), rs.getString(2)))
+                .optional();
+    }
+
+    /**
+     * Exact, case-insensitive match served by the unique index on {@code lower(email)}.
+     */
+    @Override
+    public Optional<UUID> findIdByEmail(String email) {
+        return jdbcClient.sql("SELECT id FROM users WHERE lower(email) = lower(:email)")
                 .param("email", email)
-                .query(UserEntity.class)
+                .query(UUID.class)
                 .optional();
     }
 
+    @Override
+    public List<UserEntity> findAllByLoginsOrEmails(Collection<String> logins, Collection<String> emails) {
+        return jdbcClient.sql("""
+                        SELECT id, login, email
+                        FROM users
+                        WHERE lower(login) = ANY(:logins) OR lower(email) = ANY(:emails)
+                        """)
+                .param("logins", logins.stream().map(login -> login.toLowerCase(Locale.ROOT)).toArray(String[]::new))
+                .param("emails", emails.stream().map(email -> email.toLowerCase(Locale.ROOT)).toArray(String[]::new))
+                .query(IndexedRowMapper.of((rs, columns) -> {
+                    var user = new UserEntity();
+                    user.setId(rs.getObject(columns[0], UUID.class));
+                    user.setLogin(rs.getString(columns[1]));
+                    user.setEmail(rs.getString(columns[2]));
+                    return user;
+                }, "id", "login", "email"))
+                .list();
+    }
+
     @Override
     public Optional<UserEntity> updatePassword(UserEntity userEntity) {
         int result = jdbcClient.sql("UPDATE users SET password = :password WHERE id = :id")
                 .param("password", userEntity.getPassword())
                 .param("id", userEntity.getId())
                 .update();
-        if (result == 1)
+        if (result == 1) {
+            userChangeNotifier.notifyChanged(userEntity.getId());
             return Optional.of(userEntity);
+        }
         return Optional.empty();
     }
 
+    /**
+     * Replaces the stored password of a user with another form of the same password, such as a new hash of it,
+     * unless it was changed since it was read. The user itself does not change, so no change is published.
+     *
+     * @return whether the password was replaced.
+     */
+    @Override
+    public boolean replacePassword(UUID id, String expectedPassword, String newPassword) {
+        return jdbcClient.sql("UPDATE users SET password = :password WHERE id = :id AND password = :expected_password")
+                .param("password", newPassword)
+                .param("id", id)
+                .param("expected_password", expectedPassword)
+                .update() == 1;
+    }
+
+    /**
+     * Updates only the columns present in the patch, returning the user as it was left, with their address.
+     *
+     * @param expectedLastUpdates the last updates the user may still have, or null or empty to update it regardless.
+     * @return the updated user, or empty if the user does not exist or was updated since.
+     */
+    @Override
+    public Optional<UserEntity> patch(UserPatchEntity userPatchEntity, List<LocalDateTime> expectedLastUpdates) {
+        var set = new StringJoiner(", ");
+        Map<String, Object> params = new HashMap<>();
+        if (userPatchEntity.getName() != null) {
+            set.add("name = :name");
+            params.put("name", userPatchEntity.getName().orElse(null));
+        }
+        if (userPatchEntity.getLogin() != null) {
+            set.add("login = :login");
+            params.put("login", userPatchEntity.getLogin().orElse(null));
+        }
+        if (userPatchEntity.getEmail() != null) {
+            set.add("email = :email");
+            params.put("email", userPatchEntity.getEmail().orElse(null));
+        }
+        set.add("last_update = :last_update");
+        params.put("last_update", now());
+        params.put("id", userPatchEntity.getId());
+        params.put("expected_last_updates", lastUpdates(expectedLastUpdates));
+
+        String sql = """
+                WITH updated_user AS (
+                    UPDATE users SET %s
+                    WHERE id = :id%s
+                    RETURNING id, name, login, email, password, last_update
+                )
+                SELECT u.id AS user_id, u.name AS user_name, u.login AS user_login, u.email AS user_email, u.password AS user_password, u.last_update AS user_last_update,
+                       a.id AS address_id, a.street AS address_street, a.city AS address_city, a.state AS address_state, a.zip AS address_zip, a.number AS address_number
+                FROM updated_user u
+                LEFT JOIN addresses a ON u.id = a.user_id
+                """.formatted(set, lastUpdateCondition(expectedLastUpdates));
+
+        Optional<UserEntity> patched;
+        try {
+            patched = jdbcClient.sql(sql)
+                    .params(params)
+                    .query(userWithAddressRowMapper())
+                    .optional();
+        } catch (DuplicateKeyException e) {
+            throw translateDuplicateKey(e);
+        }
+
+        patched.ifPresent(user -> userChangeNotifier.notifyChanged(user.getId()));
+        return patched;
+    }
+
+    /**
+     * Translates a violation of the unique indexes created by V2__users_unique_login_email.sql
+     * into the exception the API reports for the offending field.
+     */
+    private RuntimeException translateDuplicateKey(DuplicateKeyException e) {
+        String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        if (message != null && message.contains(LOGIN_UNIQUE_INDEX)) {
+            return new LoginAlreadyInUseException("Login already in use");
+        }
+        if (message != null && message.contains(EMAIL_UNIQUE_INDEX)) {
+            return new EmailAlreadyInUseException("Email already in use");
+        }
+        return e;
+    }
+
+    /**
+     * The condition that makes a write apply only if the user still has one of the given last updates, if any.
+     */
+    private static String lastUpdateCondition(List<LocalDateTime> expectedLastUpdates) {
+        return expectedLastUpdates == null || expectedLastUpdates.isEmpty()
+                ? ""
+                : " AND last_update = ANY(CAST(:expected_last_updates AS timestamp[]))";
+    }
+
+    private static String[] lastUpdates(List<LocalDateTime> expectedLastUpdates) {
+        return expectedLastUpdates == null
+                ? null
+                : expectedLastUpdates.stream().map(LocalDateTime::toString).toArray(String[]::new);
+    }
+
+    /**
+     * The time of a write, at the microsecond precision of the column, so that it can be compared
+     * with what is stored without being read back.
+     */
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    /**
+     * Maps the rows of {@link #SELECT_USER_WITH_ADDRESS}, each mapper finding its columns once per query.
+     */
+    private RowMapper<UserEntity> userWithAddressRowMapper() {
+        var users = userMapper.rowMapper();
+        var addresses = addressMapper.rowMapper();
+        return (rs, rowNum) -> {
+            var user = users.mapRow(rs, rowNum);
+            user.setAddress(addresses.mapRow(rs, rowNum));
+            return user;
+        };
+    }
+
 }
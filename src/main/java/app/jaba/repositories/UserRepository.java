@@ -1,20 +1,48 @@
 package app.jaba.repositories;
 
+import app.jaba.entities.UserCredentialsEntity;
 import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserPatchEntity;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface UserRepository extends Repository<UserEntity> {
 
-    Optional<UserEntity> findByLogin(String login);
+    List<UserEntity> findAllAfter(UUID after, int size);
 
-    Optional<UserEntity> findByEmail(String email);
+    void streamAll(int fetchSize, Consumer<UserEntity> action);
+
+    Optional<UUID> findIdByLogin(String login);
+
+    Optional<UUID> findIdByEmail(String email);
+
+    Optional<UserCredentialsEntity> findCredentialsByLogin(String login);
+
+    List<UserEntity> findAllByLoginsOrEmails(Collection<String> logins, Collection<String> emails);
+
+    Optional<UserEntity> update(UserEntity userEntity);
 
     Optional<UserEntity> updatePassword(UserEntity userEntity);
 
+    boolean replacePassword(UUID id, String expectedPassword, String newPassword);
+
+    Optional<UserEntity> update(UserEntity userEntity, List<LocalDateTime> expectedLastUpdates);
+
+    Optional<UserEntity> patch(UserPatchEntity userPatchEntity, List<LocalDateTime> expectedLastUpdates);
+
     Optional<UserEntity> findById(UUID id);
 
+    List<UserEntity> findAllByIds(Collection<UUID> ids);
+
     void deleteById(UUID id);
 
+    boolean deleteById(UUID id, List<LocalDateTime> expectedLastUpdates);
+
+    long count();
+
 }
@@ -33,7 +33,14 @@ public class AddressService {
                 .orElseThrow(() -> new SaveAddressException("Error saving address"));
     }
 
-    public AddressEntity update(UUID userId, AddressEntity addressEntity) {
+    /**
+     * Validates the address given to update a user, the user id included.
+     *
+     * @param userId         the UUID of the user the address belongs to.
+     * @param addressEntity  the address to validate.
+     * @throws AddressMandatoryFieldException if the address is missing or incomplete.
+     */
+    public void validate(UUID userId, AddressEntity addressEntity) {
         if (Objects.isNull(userId)) {
             throw new AddressMandatoryFieldException("User id is required");
         }
@@ -43,10 +50,6 @@ public class AddressService {
         }
         addressEntity.setUserId(userId);
         validations.forEach(validation -> validation.validate(addressEntity));
-
-        addressEntity.setId(repository.findByUserId(userId).map(AddressEntity::getId).orElse(null));
-        return repository.update(addressEntity)
-                .orElseThrow(() -> new SaveAddressException("Error updating address"));
     }
 
 }
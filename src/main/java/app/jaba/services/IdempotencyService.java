@@ -0,0 +1,349 @@
+package app.jaba.services;
+
+import app.jaba.entities.IdempotencyKeyEntity;
+import app.jaba.exceptions.IdempotencyKeyInProgressException;
+import app.jaba.exceptions.IdempotencyKeyReuseException;
+import app.jaba.exceptions.InvalidIdempotencyKeyException;
+import app.jaba.repositories.IdempotencyKeyRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.FixedDelayTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Runs a request at most once per Idempotency-Key, and answers its retries with the response it stored.
+ * <p>
+ * A key is claimed by inserting it into the idempotency_keys table, locked for a lease by a token of the request.
+ * The request then runs and stores its response under the key, through the {@link Completion} it is given, in the
+ * transaction of its own writes: either both commit, or the key is released and a retry runs the request again.
+ * Only the request holding the lock can complete or release the key, so one whose lease expired cannot touch a key
+ * another request has taken over. The response is kept until the key expires. A retry that finds the response gets it
+ * back without running again. One that finds the key still locked by another node polls until the response is
+ * stored, and takes the key over if the lock expires first. Concurrent retries on the same node do not query at all:
+ * they wait for the request already in flight. Completed keys are also kept in a bounded in-memory cache, in front of the table.
+ * <p>
+ * A request that fails releases its key, so that it can be retried. A key used again with a different request is
+ * rejected, the requests being compared by a SHA-256 fingerprint of what the caller passes as the request.
+ */
+@Service
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+public class IdempotencyService implements SchedulingConfigurer {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    IdempotencyKeyRepository idempotencyKeyRepository;
+    ObjectMapper objectMapper;
+    Duration ttl;
+    Duration lease;
+    long waitTimeoutNanos;
+    long pollIntervalMillis;
+    Duration sweepInterval;
+    int sweepBatchSize;
+    ConcurrentMap<String, CompletableFuture<IdempotencyKeyEntity>> inFlight = new ConcurrentHashMap<>();
+    Map<String, Remembered> completed;
+    LongAdder executed = new LongAdder();
+    LongAdder replayed = new LongAdder();
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${jaba.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${jaba.idempotency.lease:30s}") Duration lease,
+                              @Value("${jaba.idempotency.wait-timeout:10s}") Duration waitTimeout,
+                              @Value("${jaba.idempotency.poll-interval:100ms}") Duration pollInterval,
+                              @Value("${jaba.idempotency.cache-max-size:10000}") int cacheMaxSize,
+                              @Value("${jaba.idempotency.sweep-interval:5m}") Duration sweepInterval,
+                              @Value("${jaba.idempotency.sweep-batch-size:1000}") int sweepBatchSize) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.lease = lease;
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+        this.pollIntervalMillis = pollInterval.toMillis();
+        this.sweepInterval = sweepInterval;
+        this.sweepBatchSize = sweepBatchSize;
+        this.completed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Remembered> eldest) {
+                return size() > cacheMaxSize;
+            }
+        };
+
+        FunctionCounter.builder("idempotency.requests", executed, LongAdder::sum)
+                .tags("result", "executed")
+                .register(meterRegistry);
+        FunctionCounter.builder("idempotency.requests", replayed, LongAdder::sum)
+                .tags("result", "replayed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a request once for the given key, or returns the response it stored when it already ran.
+     *
+     * @param key          the Idempotency-Key sent by the client.
+     * @param request      what identifies the request, compared with the request the key was first used with.
+     * @param responseType the type of the response, to read it back when replayed.
+     * @param action       runs the request, and must store its response with the given {@link Completion} in the
+     *                     transaction that commits its writes.
+     * @return the response, and whether it was replayed rather than produced now.
+     * @throws InvalidIdempotencyKeyException if the key is blank or too long.
+     * @throws IdempotencyKeyReuseException if the key was used with a different request.
+     * @throws IdempotencyKeyInProgressException if the request with the key did not complete in time.
+     */
+    public <T> IdempotentResult<T> execute(String key, Object request, Class<T> responseType, Function<Completion<T>, T> action) {
+        if (!StringUtils.hasText(key) || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException("Idempotency key must have between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        var fingerprint = fingerprint(request);
+
+        var cached = cached(key);
+        if (cached != null) {
+            return replay(cached, fingerprint, responseType);
+        }
+
+        var flight = new CompletableFuture<IdempotencyKeyEntity>();
+        var existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return replay(await(existing), fingerprint, responseType);
+        }
+
+        try {
+            var result = claimAndRun(key, fingerprint, responseType, action);
+            flight.complete(result.entity());
+            return result.response();
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(new FixedDelayTask(this::sweepExpired, sweepInterval, sweepInterval));
+    }
+
+    /**
+     * Deletes the keys that expired, from the table and from the in-memory cache, in batches.
+     * Runs every {@code jaba.idempotency.sweep-interval} on every node.
+     */
+    public void sweepExpired() {
+        synchronized (completed) {
+            completed.values().removeIf(Remembered::isExpired);
+        }
+
+        long swept = 0;
+        int deleted;
+        do {
+            deleted = idempotencyKeyRepository.deleteExpired(sweepBatchSize);
+            swept += deleted;
+        } while (deleted == sweepBatchSize);
+        if (swept > 0) {
+            log.info("Swept {} expired idempotency keys", swept);
+        }
+    }
+
+    private <T> StoredResult<T> claimAndRun(String key, String fingerprint, Class<T> responseType,
+                                            Function<Completion<T>, T> action) {
+        long deadline = System.nanoTime() + waitTimeoutNanos;
+        while (true) {
+            var owner = UUID.randomUUID();
+            if (idempotencyKeyRepository.acquire(key, fingerprint, owner, lease, ttl)) {
+                return run(key, owner, action);
+            }
+
+            var found = idempotencyKeyRepository.findByKey(key);
+            if (found.isPresent()) {
+                var entity = found.get();
+                if (entity.isCompleted()) {
+                    remember(entity);
+                    return new StoredResult<>(entity, replay(entity, fingerprint, responseType));
+                }
+                if (!entity.getFingerprint().equals(fingerprint)) {
+                    throw new IdempotencyKeyReuseException("Idempotency key already used with a different request");
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IdempotencyKeyInProgressException("A request with this idempotency key is still in progress");
+                }
+                sleep();
+            }
+        }
+    }
+
+    private <T> StoredResult<T> run(String key, UUID owner, Function<Completion<T>, T> action) {
+        var completion = new StoredCompletion<T>(key, owner);
+        T value;
+        try {
+            value = action.apply(completion);
+            if (completion.entity == null) {
+                throw new IllegalStateException("Request with idempotency key " + key + " did not store its response");
+            }
+        } catch (RuntimeException | Error e) {
+            // A no-op when the response was committed: the key stays completed and a retry gets it back.
+            idempotencyKeyRepository.release(key, owner);
+            throw e;
+        }
+
+        remember(completion.entity);
+        executed.increment();
+        return new StoredResult<>(completion.entity, new IdempotentResult<>(value, false));
+    }
+
+    private <T> IdempotentResult<T> replay(IdempotencyKeyEntity entity, String fingerprint, Class<T> responseType) {
+        if (!entity.getFingerprint().equals(fingerprint)) {
+            throw new IdempotencyKeyReuseException("Idempotency key already used with a different request");
+        }
+        try {
+            var value = objectMapper.readValue(entity.getResponse(), responseType);
+            replayed.increment();
+            return new IdempotentResult<>(value, true);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read the response stored for idempotency key " + entity.getKey(), e);
+        }
+    }
+
+    private IdempotencyKeyEntity await(CompletableFuture<IdempotencyKeyEntity> flight) {
+        try {
+            return flight.get(waitTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException("A request with this idempotency key is still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException("A request with this idempotency key is still in progress");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(pollIntervalMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException("A request with this idempotency key is still in progress");
+        }
+    }
+
+    private IdempotencyKeyEntity cached(String key) {
+        synchronized (completed) {
+            var remembered = completed.get(key);
+            if (remembered == null) {
+                return null;
+            }
+            if (remembered.isExpired()) {
+                completed.remove(key);
+                return null;
+            }
+            return remembered.entity();
+        }
+    }
+
+    /**
+     * Keeps a completed key until it expires, timed on this node from the time the database said it had left.
+     */
+    private void remember(IdempotencyKeyEntity entity) {
+        var remembered = new Remembered(entity, System.nanoTime() + entity.getExpiresIn().toNanos());
+        synchronized (completed) {
+            completed.put(entity.getKey(), remembered);
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request", e);
+        }
+    }
+
+    /**
+     * Stores the response of a request under its Idempotency-Key.
+     */
+    public interface Completion<T> {
+
+        /**
+         * Stores the response, in the current transaction, so that it only commits along with the request.
+         *
+         * @param response the response to replay to retries.
+         * @throws IdempotencyKeyInProgressException if another request took the key over once the lease expired,
+         *                                           in which case the transaction must roll back.
+         */
+        void complete(T response);
+    }
+
+    /**
+     * The response to a request made with an Idempotency-Key.
+     *
+     * @param value    the response.
+     * @param replayed whether it was stored by an earlier request with the same key rather than produced now.
+     */
+    public record IdempotentResult<T>(T value, boolean replayed) {
+    }
+
+    private record StoredResult<T>(IdempotencyKeyEntity entity, IdempotentResult<T> response) {
+    }
+
+    private record Remembered(IdempotencyKeyEntity entity, long expiresAt) {
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+
+    private final class StoredCompletion<T> implements Completion<T> {
+        final String key;
+        final UUID owner;
+        IdempotencyKeyEntity entity;
+
+        StoredCompletion(String key, UUID owner) {
+            this.key = key;
+            this.owner = owner;
+        }
+
+        @Override
+        public void complete(T response) {
+            String serialized;
+            try {
+                serialized = objectMapper.writeValueAsString(response);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not store the response of idempotency key " + key, e);
+            }
+            entity = idempotencyKeyRepository.complete(key, owner, serialized)
+                    .orElseThrow(() -> new IdempotencyKeyInProgressException("A request with this idempotency key is still in progress"));
+        }
+    }
+}
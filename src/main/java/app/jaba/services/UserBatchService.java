@@ -0,0 +1,204 @@
+package app.jaba.services;
+
+import app.jaba.caches.UserAvailabilityFilter;
+import app.jaba.entities.UserBatchResultEntity;
+import app.jaba.entities.UserEntity;
+import app.jaba.exceptions.EmailAlreadyInUseException;
+import app.jaba.exceptions.InvalidSizeValueException;
+import app.jaba.exceptions.LoginAlreadyInUseException;
+import app.jaba.exceptions.PasswordHashingUnavailableException;
+import app.jaba.exceptions.SaveUserException;
+import app.jaba.generators.IdGenerator;
+import app.jaba.passwords.PasswordHasher;
+import app.jaba.repositories.AddressRepository;
+import app.jaba.repositories.UserRepository;
+import app.jaba.services.validations.address.CreateAddressValidation;
+import app.jaba.services.validations.user.CreateUserValidation;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Service
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+public class UserBatchService {
+    UserRepository userRepository;
+    AddressRepository addressRepository;
+    UserAvailabilityFilter userAvailabilityFilter;
+    PasswordHasher passwordHasher;
+    List<CreateUserValidation> validations;
+    List<CreateAddressValidation> addressValidations;
+    TransactionTemplate transactionTemplate;
+    IdGenerator idGenerator;
+    int maxSize;
+    int chunkSize;
+
+    public UserBatchService(UserRepository userRepository,
+                            AddressRepository addressRepository,
+                            UserAvailabilityFilter userAvailabilityFilter,
+                            PasswordHasher passwordHasher,
+                            List<CreateUserValidation> validations,
+                            List<CreateAddressValidation> addressValidations,
+                            TransactionTemplate transactionTemplate,
+                            IdGenerator idGenerator,
+                            @Value("${jaba.users.batch.max-size:50000}") int maxSize,
+                            @Value("${jaba.users.batch.chunk-size:1000}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.addressRepository = addressRepository;
+        this.userAvailabilityFilter = userAvailabilityFilter;
+        this.passwordHasher = passwordHasher;
+        this.validations = validations;
+        this.addressValidations = addressValidations;
+        this.transactionTemplate = transactionTemplate;
+        this.idGenerator = idGenerator;
+        this.maxSize = maxSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Saves many users at once.
+     * <p>
+     * Every user is validated in memory first, then the valid ones are saved in chunks, each chunk in its own
+     * transaction: one query finds the logins and emails already in use, one statement inserts the users
+     * and one more inserts their addresses. The passwords of a chunk are hashed in parallel before its transaction
+     * starts. A rejected user does not prevent the others from being saved.
+     *
+     * @param users the users to save.
+     * @return the result of each user, in the order they were given.
+     * @throws InvalidSizeValueException if there are more users than a batch accepts.
+     */
+    public List<UserBatchResultEntity> saveAll(List<UserEntity> users) {
+        if (users.size() > maxSize) {
+            throw new InvalidSizeValueException("Batch size must be less than or equal to " + maxSize);
+        }
+
+        List<UserBatchResultEntity> results = new ArrayList<>(users.size());
+        List<UserBatchResultEntity> accepted = new ArrayList<>(users.size());
+        Set<String> loginsInBatch = new HashSet<>();
+        Set<String> emailsInBatch = new HashSet<>();
+        for (int index = 0; index < users.size(); index++) {
+            var result = new UserBatchResultEntity(index, users.get(index), null);
+            results.add(result);
+            try {
+                validate(result.getUser(), loginsInBatch, emailsInBatch);
+                accepted.add(result);
+            } catch (RuntimeException e) {
+                result.setError(e);
+            }
+        }
+
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            var chunk = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+            try {
+                passwordHasher.hashPasswords(chunk.stream().map(UserBatchResultEntity::getUser).toList());
+            } catch (PasswordHashingUnavailableException e) {
+                chunk.forEach(result -> result.setError(e));
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> saveChunk(chunk));
+            } catch (DataAccessException e) {
+                log.error("Error saving a chunk of {} users", chunk.size(), e);
+                // Users already rejected as in use keep that error, the others were rolled back.
+                chunk.stream()
+                        .filter(result -> result.getError() == null)
+                        .forEach(result -> result.setError(new SaveUserException("Error saving user")));
+            }
+        }
+
+        log.info("Batch of {} users processed, {} accepted for insert", users.size(), accepted.size());
+        return results;
+    }
+
+    /**
+     * Runs the same validations as a single create, plus the uniqueness of login and email inside the batch.
+     */
+    private void validate(UserEntity user, Set<String> loginsInBatch, Set<String> emailsInBatch) {
+        validations.forEach(validation -> validation.validate(user));
+
+        user.setId(idGenerator.generate());
+        var address = user.getAddress();
+        if (address != null) {
+            address.setUserId(user.getId());
+            addressValidations.forEach(validation -> validation.validate(address));
+        }
+
+        if (!loginsInBatch.add(normalize(user.getLogin()))) {
+            throw new LoginAlreadyInUseException("Login already in use");
+        }
+        if (!emailsInBatch.add(normalize(user.getEmail()))) {
+            throw new EmailAlreadyInUseException("Email already in use");
+        }
+    }
+
+    private void saveChunk(List<UserBatchResultEntity> chunk) {
+        var pending = rejectInUse(chunk, true);
+
+        var saved = userRepository.saveAll(pending.stream().map(UserBatchResultEntity::getUser).toList());
+        var savedIds = saved.stream().map(UserEntity::getId).collect(Collectors.toSet());
+        var skipped = pending.stream().filter(result -> !savedIds.contains(result.getUser().getId())).toList();
+        if (!skipped.isEmpty()) {
+            // Taken by a concurrent insert after the lookup, look again to tell which field collided.
+            rejectInUse(skipped, false).forEach(result -> result.setError(new SaveUserException("Error saving user")));
+        }
+
+        addressRepository.saveAll(saved.stream()
+                .map(UserEntity::getAddress)
+                .filter(Objects::nonNull)
+                .toList());
+        saved.forEach(userAvailabilityFilter::add);
+    }
+
+    /**
+     * Rejects the users whose login or email is already in use, with a single query for the whole chunk.
+     * When the {@link UserAvailabilityFilter} can be trusted, only the users it cannot rule out are looked up,
+     * and there is no query at all when it rules them all out.
+     *
+     * @return the users that were not rejected.
+     */
+    private List<UserBatchResultEntity> rejectInUse(List<UserBatchResultEntity> chunk, boolean useFilter) {
+        var candidates = useFilter
+                ? chunk.stream().filter(result -> userAvailabilityFilter.mightHaveLogin(result.getUser().getLogin())
+                        || userAvailabilityFilter.mightHaveEmail(result.getUser().getEmail())).toList()
+                : chunk;
+        var inUse = candidates.isEmpty() ? List.<UserEntity>of() : userRepository.findAllByLoginsOrEmails(
+                candidates.stream().map(result -> result.getUser().getLogin()).toList(),
+                candidates.stream().map(result -> result.getUser().getEmail()).toList());
+
+        Set<String> loginsInUse = new HashSet<>();
+        Set<String> emailsInUse = new HashSet<>();
+        inUse.forEach(user -> {
+            loginsInUse.add(normalize(user.getLogin()));
+            emailsInUse.add(normalize(user.getEmail()));
+        });
+
+        List<UserBatchResultEntity> pending = new ArrayList<>(chunk.size());
+        for (var result : chunk) {
+            if (loginsInUse.contains(normalize(result.getUser().getLogin()))) {
+                result.setError(new LoginAlreadyInUseException("Login already in use"));
+            } else if (emailsInUse.contains(normalize(result.getUser().getEmail()))) {
+                result.setError(new EmailAlreadyInUseException("Email already in use"));
+            } else {
+                pending.add(result);
+            }
+        }
+        return pending;
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,91 @@
+package app.jaba.services;
+
+import app.jaba.caches.UserAvailabilityFilter;
+import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserImportRejectionEntity;
+import app.jaba.entities.UserImportReportEntity;
+import app.jaba.entities.UserImportRowEntity;
+import app.jaba.generators.IdGenerator;
+import app.jaba.passwords.PasswordHasher;
+import app.jaba.repositories.UserImportRepository;
+import app.jaba.services.validations.address.CreateAddressValidation;
+import app.jaba.services.validations.user.CreateUserValidation;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Service
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional
+@Slf4j
+public class UserImportService {
+    UserImportRepository userImportRepository;
+    List<CreateUserValidation> validations;
+    List<CreateAddressValidation> addressValidations;
+    IdGenerator idGenerator;
+    PasswordHasher passwordHasher;
+    UserAvailabilityFilter userAvailabilityFilter;
+
+    /**
+     * Imports users in bulk, for migrations from other systems.
+     * <p>
+     * Users are validated with the same rules as a single create while they are read, and the valid ones are
+     * copied into a staging table with COPY, their passwords hashed in parallel on the way. The staging table is then merged into users and addresses with
+     * one statement. Users whose login or email is already in use, or repeated earlier in the import, are skipped.
+     * The imported users are added to the {@link UserAvailabilityFilter}. Everything runs in a single transaction.
+     *
+     * @param users the users to import, in the order they were read.
+     * @return a report with the number of users imported and the reason each rejected row was not.
+     */
+    public UserImportReportEntity importUsers(Stream<UserEntity> users) {
+        var report = new UserImportReportEntity();
+        var line = new AtomicLong();
+
+        userImportRepository.createStagingTable();
+        userImportRepository.copyToStagingTable(passwordHasher.hashPasswords(users
+                .map(user -> new UserImportRowEntity(line.incrementAndGet(), user))
+                .filter(row -> validate(row, report)), UserImportRowEntity::getUser));
+
+        report.setReceived(line.get());
+        report.setImported(userImportRepository.mergeStagingTable());
+        userImportRepository.streamMergedFromStagingTable(userAvailabilityFilter::add);
+        report.getRejected().addAll(userImportRepository.findRejectedInStagingTable());
+        report.getRejected().sort(Comparator.comparingLong(UserImportRejectionEntity::getLine));
+
+        log.info("Imported {} of {} users", report.getImported(), report.getReceived());
+        return report;
+    }
+
+    /**
+     * Validates a row, recording it in the report when rejected.
+     *
+     * @return whether the row is valid.
+     */
+    private boolean validate(UserImportRowEntity row, UserImportReportEntity report) {
+        var user = row.getUser();
+        try {
+            validations.forEach(validation -> validation.validate(user));
+
+            user.setId(idGenerator.generate());
+            var address = user.getAddress();
+            if (address != null) {
+                address.setUserId(user.getId());
+                addressValidations.forEach(validation -> validation.validate(address));
+            }
+            return true;
+        } catch (RuntimeException e) {
+            report.getRejected().add(new UserImportRejectionEntity(row.getLine(), e.getMessage()));
+            return false;
+        }
+    }
+}
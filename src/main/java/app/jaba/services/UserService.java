@@ -1,21 +1,45 @@
 package app.jaba.services;
 
+import app.jaba.caches.CredentialsCache;
+import app.jaba.caches.UserAvailabilityFilter;
+import app.jaba.caches.UserCache;
+import app.jaba.entities.CredentialsEntity;
 import app.jaba.entities.UpdatePasswordEntity;
+import app.jaba.entities.UserAvailabilityEntity;
+import app.jaba.entities.UserCredentialsEntity;
 import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserMultiGetEntity;
+import app.jaba.entities.UserPatchEntity;
 import app.jaba.exceptions.*;
+import app.jaba.passwords.PasswordHasher;
 import app.jaba.repositories.UserRepository;
 import app.jaba.services.validations.PageAndSizeValidation;
+import app.jaba.services.validations.patchuser.PatchUserValidation;
 import app.jaba.services.validations.updatepassword.UpdatePasswordValidation;
 import app.jaba.services.validations.user.CreateUserValidation;
 import app.jaba.services.validations.user.UpdateUserValidation;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static lombok.AccessLevel.PRIVATE;
 
@@ -26,11 +50,25 @@ import static lombok.AccessLevel.PRIVATE;
 @Slf4j
 public class UserService {
     UserRepository userRepository;
+    UserCache userCache;
+    CredentialsCache credentialsCache;
+    UserAvailabilityFilter userAvailabilityFilter;
     AddressService addressService;
     List<CreateUserValidation> validations;
     List<UpdateUserValidation> updateUserValidations;
     PageAndSizeValidation pageAndSizeValidation;
     List<UpdatePasswordValidation> updatePasswordValidations;
+    List<PatchUserValidation> patchUserValidations;
+    PasswordHasher passwordHasher;
+    TransactionTemplate transactionTemplate;
+
+    @NonFinal
+    @Value("${jaba.users.export.fetch-size:1000}")
+    int exportFetchSize;
+
+    @NonFinal
+    @Value("${jaba.users.multi-get.max-size:100}")
+    int multiGetMaxSize;
 
     /**
      * Finds all users with pagination.
@@ -46,62 +84,272 @@ public class UserService {
     }
 
     /**
-     * Finds a user by their ID.
+     * Finds many users by id with a single query.
+     *
+     * @param ids the UUIDs of the users; repeated ids count toward the limit, but are only looked up and returned once.
+     * @return the users found and the ids not found, both in the order the ids were given.
+     * @throws InvalidSizeValueException if more ids are given than allowed at once.
+     */
+    @Transactional(readOnly = true)
+    public UserMultiGetEntity findAllByIds(List<UUID> ids) {
+        if (ids.size() > multiGetMaxSize) {
+            throw new InvalidSizeValueException("Number of ids must be less than or equal to " + multiGetMaxSize);
+        }
+        var distinctIds = new LinkedHashSet<>(ids);
+
+        Map<UUID, UserEntity> found = new HashMap<>();
+        userRepository.findAllByIds(distinctIds).forEach(user -> found.put(user.getId(), user));
+
+        var result = new UserMultiGetEntity();
+        for (UUID id : distinctIds) {
+            var user = found.get(id);
+            if (user != null) {
+                result.getUsers().add(user);
+            } else {
+                result.getMissing().add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the users that come after the given cursor, ordered by id.
+     * Unlike {@link #findAll(int, int)}, the cost of a page does not depend on how deep it is.
+     *
+     * @param after the cursor returned with the previous page, or a blank value for the first page.
+     * @param size  the number of items per page.
+     * @return a list of UserEntity objects.
+     * @throws InvalidCursorValueException if the cursor is not a valid value.
+     */
+    public List<UserEntity> findAllAfter(String after, int size) {
+        pageAndSizeValidation.validate(0, size);
+        return userRepository.findAllAfter(decodeCursor(after), size);
+    }
+
+    /**
+     * Reads every user, handing them one at a time to the given action as they come from the database.
+     *
+     * @param action the action to run for each user.
+     */
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<UserEntity> action) {
+        userRepository.streamAll(exportFetchSize, action);
+    }
+
+    /**
+     * Builds the cursor that points to the page following the given one.
+     * Does not touch the database, so it runs without a transaction.
+     *
+     * @param users the users of the current page.
+     * @param size  the number of items per page.
+     * @return the next cursor, or empty when the current page is the last one.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<String> nextCursor(List<UserEntity> users, int size) {
+        if (size == 0 || users.size() < size) {
+            return Optional.empty();
+        }
+        UUID lastId = users.get(users.size() - 1).getId();
+        ByteBuffer buffer = ByteBuffer.allocate(16)
+                .putLong(lastId.getMostSignificantBits())
+                .putLong(lastId.getLeastSignificantBits());
+        return Optional.of(Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array()));
+    }
+
+    /**
+     * Finds a user by their ID, serving it from the {@link UserCache} when possible.
+     * Runs without a transaction of its own so that cache hits never borrow a JDBC connection.
      *
      * @param id the UUID of the user.
      * @return a UserEntity object.
      * @throws UserNotFoundException if the user with the given ID does not exist.
      */
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public UserEntity findById(UUID id) {
-        return userRepository
-                .findById(id)
+        return userCache
+                .get(id, userRepository::findById)
                 .orElseThrow(() -> new UserNotFoundException("User not found"));
     }
 
     /**
-     * Saves a new user.
+     * Tells whether a login and an email are free to use. Values the {@link UserAvailabilityFilter} rules out
+     * are answered without a query, so this runs without a transaction of its own.
+     *
+     * @param login the login to check, or null.
+     * @param email the email to check, or null.
+     * @return the availability of each value given.
+     * @throws UserMandatoryFieldException if neither a login nor an email is given.
+     */
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public UserAvailabilityEntity checkAvailability(String login, String email) {
+        if (!StringUtils.hasText(login) && !StringUtils.hasText(email)) {
+            throw new UserMandatoryFieldException("Login or email is mandatory");
+        }
+
+        var availability = new UserAvailabilityEntity();
+        if (StringUtils.hasText(login)) {
+            availability.setLoginAvailable(!userAvailabilityFilter.isLoginInUse(login, value -> userRepository.findIdByLogin(value).isPresent()));
+        }
+        if (StringUtils.hasText(email)) {
+            availability.setEmailAvailable(!userAvailabilityFilter.isEmailInUse(email.strip(), value -> userRepository.findIdByEmail(value).isPresent()));
+        }
+        return availability;
+    }
+
+    /**
+     * Verifies the login and password of a user, for sign-in.
+     * <p>
+     * Credentials verified in the last seconds are answered by the {@link CredentialsCache}. Otherwise only the id
+     * and password hash of the user are read, and the password is checked on the hashing pool, with no transaction
+     * held. The {@link UserAvailabilityFilter} is not consulted, since it may not know yet of a user just created on
+     * another node. When no user has the login, the password is still checked against a fixed hash, so that the
+     * response time does not tell which logins exist.
+     * A password stored as plaintext, or hashed at a lower cost than the current one, is then hashed again.
+     *
+     * @param credentials the login and password presented.
+     * @return the UUID of the user the credentials belong to.
+     * @throws UserMandatoryFieldException if the login or the password is missing.
+     * @throws InvalidCredentialsException if no user has the login, or the password is not theirs.
+     * @throws PasswordHashingUnavailableException if too many passwords are being hashed already.
+     */
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public UUID verifyCredentials(CredentialsEntity credentials) {
+        var login = credentials.getLogin();
+        var password = credentials.getPassword();
+        if (!StringUtils.hasText(login) || !StringUtils.hasText(password)) {
+            throw new UserMandatoryFieldException("Login and password are mandatory");
+        }
+
+        return credentialsCache.verify(login, password, () -> {
+            var user = userRepository.findCredentialsByLogin(login);
+            if (user.isEmpty()) {
+                passwordHasher.simulateMatch(password);
+                return Optional.empty();
+            }
+            return user
+                    .filter(found -> passwordHasher.matches(password, found.getPassword()))
+                    .map(found -> {
+                        rehashIfNeeded(found, password);
+                        return found.getId();
+                    });
+        }).orElseThrow(() -> new InvalidCredentialsException("Invalid login or password"));
+    }
+
+    /**
+     * Saves a new user, with their password hashed.
+     * The password is hashed before the transaction starts, so that no connection is held meanwhile.
      *
      * @param userEntity the UserEntity object to save.
      * @return the saved UserEntity object.
      * @throws SaveUserException if there is an error while saving the user.
+     * @throws LoginAlreadyInUseException if another user already has the same login.
+     * @throws EmailAlreadyInUseException if another user already has the same email.
+     * @throws PasswordHashingUnavailableException if too many passwords are being hashed already.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public UserEntity save(UserEntity userEntity) {
-        validations.forEach(validation -> validation.validate(userEntity));
+        return save(userEntity, saved -> {
+        });
+    }
 
-        var userSaved = userRepository.save(userEntity)
-                .orElseThrow(() -> new SaveUserException("Error saving user"));
+    /**
+     * Saves a new user, with their password hashed, and runs beforeCommit in the same transaction.
+     *
+     * @param userEntity   the UserEntity object to save.
+     * @param beforeCommit runs with the saved user before the transaction commits; what it writes commits or rolls
+     *                     back along with the user.
+     * @return the saved UserEntity object.
+     * @throws SaveUserException if there is an error while saving the user.
+     * @throws LoginAlreadyInUseException if another user already has the same login.
+     * @throws EmailAlreadyInUseException if another user already has the same email.
+     * @throws PasswordHashingUnavailableException if too many passwords are being hashed already.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public UserEntity save(UserEntity userEntity, Consumer<UserEntity> beforeCommit) {
+        validations.forEach(validation -> validation.validate(userEntity));
+        userEntity.setPassword(passwordHasher.hash(userEntity.getPassword()));
 
-        saveAddress(userSaved);
+        var userSaved = transactionTemplate.execute(status -> {
+            var saved = userRepository.save(userEntity)
+                    .orElseThrow(() -> new SaveUserException("Error saving user"));
+            saveAddress(saved);
+            beforeCommit.accept(saved);
+            return saved;
+        });
+        userAvailabilityFilter.add(userSaved);
 
         return userSaved;
     }
 
     /**
-     * Updates an existing user.
+     * Updates an existing user and their address, in a single statement.
+     * The address is inserted if the user did not have one yet.
      *
      * @param id      the UUID of the user.
      * @param userEntity the UserEntity object with the updated data.
-     * @return the updated UserDto object.
-     * @throws UserNotFoundException if the user with the given ID does not exist.
-     * @throws UpdateUserException if there is an error while updating the user.
+     * @param expectedLastUpdates the last updates the client accepts, empty to accept any, or null to update the user
+     *                            regardless.
+     * @return the updated UserEntity object, with its address.
+     * @throws UserNotFoundException if the user with the given ID does not exist and no last update was expected.
+     * @throws PreconditionFailedException if the user has none of the expected last updates, or does not exist.
+     * @throws AddressMandatoryFieldException if the address is missing or incomplete.
+     * @throws LoginAlreadyInUseException if another user already has the same login.
+     * @throws EmailAlreadyInUseException if another user already has the same email.
      */
-    public UserEntity update(UUID id, UserEntity userEntity) {
-        var userFound = userRepository.findById(id)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
+    public UserEntity update(UUID id, UserEntity userEntity, List<LocalDateTime> expectedLastUpdates) {
         userEntity.setId(id);
-        userEntity.setPassword(userFound.getPassword());
         updateUserValidations.forEach(validation -> validation.validate(userEntity));
+        addressService.validate(id, userEntity.getAddress());
 
-        var userUpdated = userRepository.update(userEntity)
-                .orElseThrow(() -> new UpdateUserException("Error updating user"));
+        userCache.evict(id);
+        credentialsCache.evict(id);
+        var updated = userRepository.update(userEntity, expectedLastUpdates)
+                .orElseThrow(() -> notFoundOrModified(expectedLastUpdates));
+        userAvailabilityFilter.add(updated);
+        return updated;
+    }
 
-        updateAddress(userUpdated);
+    /**
+     * Changes only the fields present in the patch, without reading the user first.
+     * Only the validations of the fields being changed run.
+     *
+     * @param id    the UUID of the user.
+     * @param patch the fields to change.
+     * @param expectedLastUpdates the last updates the client accepts, empty to accept any, or null to update the user
+     *                            regardless.
+     * @return the updated UserEntity object, with its address.
+     * @throws UserNotFoundException if the user with the given ID does not exist and no last update was expected.
+     * @throws PreconditionFailedException if the user has none of the expected last updates, or does not exist.
+     * @throws UserMandatoryFieldException if a mandatory field is set to null or blank.
+     * @throws EmailFormatException if the new email is not valid.
+     * @throws LoginAlreadyInUseException if another user already has the new login.
+     * @throws EmailAlreadyInUseException if another user already has the new email.
+     */
+    public UserEntity patch(UUID id, UserPatchEntity patch, List<LocalDateTime> expectedLastUpdates) {
+        if (patch.isEmpty()) {
+            if (expectedLastUpdates == null) {
+                return findById(id);
+            }
+            return userCache.get(id, userRepository::findById)
+                    .filter(user -> expectedLastUpdates.isEmpty() || expectedLastUpdates.contains(user.getLastUpdate()))
+                    .orElseThrow(() -> notFoundOrModified(expectedLastUpdates));
+        }
+        patch.setId(id);
+        patchUserValidations.forEach(validation -> validation.validate(patch));
 
-        return userUpdated;
+        userCache.evict(id);
+        credentialsCache.evict(id);
+        var patched = userRepository.patch(patch, expectedLastUpdates)
+                .orElseThrow(() -> notFoundOrModified(expectedLastUpdates));
+        userAvailabilityFilter.add(patched);
+        return patched;
     }
 
     /**
      * Updates the password of an existing user.
+     * The new password is always hashed at the current cost, which is how hashes of a lower cost, and the
+     * plaintext passwords stored before hashing was introduced, are replaced. Hashing happens outside of any
+     * transaction, so that no connection is held meanwhile.
      *
      * @param id                 the UUID of the user.
      * @param updatePasswordEntity  the UpdatePasswordEntity object with the updated password.
@@ -109,18 +357,22 @@ public class UserService {
      * @throws UserNotFoundException if the user with the given ID does not exist.
      * @throws InvalidPasswordException if the old password is incorrect.
      * @throws UpdatePasswordException if there is an error while updating the password.
+     * @throws PasswordHashingUnavailableException if too many passwords are being hashed already.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public UserEntity updatePassword(UUID id, UpdatePasswordEntity updatePasswordEntity) {
         updatePasswordValidations.forEach(validation -> validation.validate(updatePasswordEntity));
 
         var user = userRepository.findById(id)
                 .orElseThrow(() -> new UserNotFoundException("User not found"));
 
-        if (!user.getPassword().equals(updatePasswordEntity.getOldPassword())) {
+        if (!passwordHasher.matches(updatePasswordEntity.getOldPassword(), user.getPassword())) {
             throw new InvalidPasswordException("The old password is invalid");
         }
 
-        user.setPassword(updatePasswordEntity.getNewPassword());
+        user.setPassword(passwordHasher.hash(updatePasswordEntity.getNewPassword()));
+        userCache.evict(id);
+        credentialsCache.evict(id);
         return userRepository.updatePassword(user)
                 .orElseThrow(() -> new UpdatePasswordException("Error updating password"));
     }
@@ -129,12 +381,67 @@ public class UserService {
      * Deletes a user by their ID.
      *
      * @param id the UUID of the user.
-     * @throws UserNotFoundException if the user with the given ID does not exist.
+     * @param expectedLastUpdates the last updates the client accepts, empty to accept any, or null to delete the user
+     *                            regardless.
+     * @throws UserNotFoundException if the user with the given ID does not exist and no last update was expected.
+     * @throws PreconditionFailedException if the user has none of the expected last updates, or does not exist.
      */
-    public void deleteById(UUID id) {
-        var userFound = userRepository.findById(id)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
-        userRepository.deleteById(userFound.getId());
+    public void deleteById(UUID id, List<LocalDateTime> expectedLastUpdates) {
+        userCache.evict(id);
+        credentialsCache.evict(id);
+        if (!userRepository.deleteById(id, expectedLastUpdates)) {
+            throw notFoundOrModified(expectedLastUpdates);
+        }
+    }
+
+    /**
+     * Replaces a plaintext password, or a hash of a lower cost than the current one, once the user has proved they
+     * know it. Sign-in goes on if that fails, and a later one replaces it.
+     *
+     * @param user     the id and stored password of the user.
+     * @param password the password the user presented, which matches the stored one.
+     */
+    private void rehashIfNeeded(UserCredentialsEntity user, String password) {
+        if (!passwordHasher.needsRehash(user.getPassword())) {
+            return;
+        }
+        try {
+            userRepository.replacePassword(user.getId(), user.getPassword(), passwordHasher.hash(password));
+        } catch (PasswordHashingUnavailableException | DataAccessException e) {
+            log.warn("Could not hash again the password of user {}", user.getId(), e);
+        }
+    }
+
+    /**
+     * Tells why a write matched no row. With If-Match, a user that does not exist has no version that could match,
+     * so the precondition fails (RFC 9110, section 13.1.1) whether the user was updated or deleted.
+     */
+    private static RuntimeException notFoundOrModified(List<LocalDateTime> expectedLastUpdates) {
+        if (expectedLastUpdates != null) {
+            return new PreconditionFailedException("User was modified");
+        }
+        return new UserNotFoundException("User not found");
+    }
+
+    /**
+     * Decodes a cursor built by {@link #nextCursor(List, int)}.
+     *
+     * @param cursor the cursor sent by the client.
+     * @return the id of the last user of the previous page, or null for the first page.
+     */
+    private UUID decodeCursor(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            if (buffer.remaining() != 16) {
+                throw new InvalidCursorValueException("Invalid cursor");
+            }
+            return new UUID(buffer.getLong(), buffer.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorValueException("Invalid cursor");
+        }
     }
 
     /**
@@ -150,13 +457,4 @@ public class UserService {
         }
     }
 
-    /**
-     * Updates the address of a user.
-     *
-     * @param userUpdated the UserEntity object with the updated user address information.
-     */
-    private void updateAddress(UserEntity userUpdated) {
-        userUpdated.setAddress(addressService.update(userUpdated.getId(), userUpdated.getAddress()));
-    }
-
 }
@@ -0,0 +1,34 @@
+package app.jaba.services.validations.patchuser;
+
+import app.jaba.entities.UserPatchEntity;
+import app.jaba.exceptions.EmailFormatException;
+import app.jaba.validators.EmailValidator;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class PatchUserEmailFormatValidation implements PatchUserValidation {
+
+    EmailValidator emailValidator;
+
+    /**
+     * Normalizes and checks the email, only when the patch changes it.
+     */
+    @Override
+    public void validate(UserPatchEntity patch) {
+        if (patch.getEmail() == null || patch.getEmail().isEmpty()) {
+            return;
+        }
+        patch.setEmail(Optional.of(emailValidator.normalize(patch.getEmail().get())));
+        if (!emailValidator.isValid(patch.getEmail().get())) {
+            throw new EmailFormatException("Invalid email format");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package app.jaba.services.validations.patchuser;
+
+import app.jaba.entities.UserPatchEntity;
+import app.jaba.exceptions.UserMandatoryFieldException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Optional;
+
+/**
+ * The mandatory fields may be left out of a patch, but not set to null or blank.
+ */
+@Component
+public class PatchUserMandatoryFieldValidation implements PatchUserValidation {
+
+    @Override
+    public void validate(UserPatchEntity patch) {
+        if (isCleared(patch.getName())) {
+            throw new UserMandatoryFieldException("Name is mandatory");
+        }
+        if (isCleared(patch.getEmail())) {
+            throw new UserMandatoryFieldException("Email is mandatory");
+        }
+        if (isCleared(patch.getLogin())) {
+            throw new UserMandatoryFieldException("Login is mandatory");
+        }
+    }
+
+    private static boolean isCleared(Optional<String> field) {
+        return field != null && !StringUtils.hasText(field.orElse(null));
+    }
+}
@@ -0,0 +1,7 @@
+package app.jaba.services.validations.patchuser;
+
+import app.jaba.entities.UserPatchEntity;
+
+public interface PatchUserValidation {
+    void validate(UserPatchEntity patch);
+}
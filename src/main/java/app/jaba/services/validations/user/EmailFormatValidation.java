@@ -2,14 +2,31 @@ package app.jaba.services.validations.user;
 
 import app.jaba.entities.UserEntity;
 import app.jaba.exceptions.EmailFormatException;
+import app.jaba.validators.EmailValidator;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
 import org.springframework.stereotype.Component;
 
+import static lombok.AccessLevel.PRIVATE;
+
 @Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
 public class EmailFormatValidation implements CreateUserValidation, UpdateUserValidation {
 
+    EmailValidator emailValidator;
+
+    /**
+     * Normalizes the email of the user, so that it is stored and compared in its canonical form, and checks its format.
+     * A missing email is left to {@link UserMandatoryFieldValidation}.
+     */
     @Override
     public void validate(UserEntity user) {
-        if (!user.getEmail().matches("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$")) {
+        if (user.getEmail() == null) {
+            return;
+        }
+        user.setEmail(emailValidator.normalize(user.getEmail()));
+        if (!emailValidator.isValid(user.getEmail())) {
             throw new EmailFormatException("Invalid email format");
         }
     }
@@ -19,9 +19,6 @@ public class UserMandatoryFieldValidation implements CreateUserValidation, Updat
         if (!StringUtils.hasText(user.getLogin())) {
             throw new UserMandatoryFieldException("Login is mandatory");
         }
-        if (!StringUtils.hasText(user.getPassword())) {
-            throw new UserMandatoryFieldException("Password is mandatory");
-        }
     }
 
 }
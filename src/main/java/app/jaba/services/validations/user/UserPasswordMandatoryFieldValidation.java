@@ -0,0 +1,20 @@
+package app.jaba.services.validations.user;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.exceptions.UserMandatoryFieldException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * The password is only given when a user is created, updates keep the one stored and change it through its own endpoint.
+ */
+@Component
+public class UserPasswordMandatoryFieldValidation implements CreateUserValidation {
+
+    @Override
+    public void validate(UserEntity user) {
+        if (!StringUtils.hasText(user.getPassword())) {
+            throw new UserMandatoryFieldException("Password is mandatory");
+        }
+    }
+}
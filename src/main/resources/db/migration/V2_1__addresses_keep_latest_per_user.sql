@@ -0,0 +1,10 @@
+-- Runs right before V3 on databases that have not applied it yet, so that the address V3 keeps for a user with
+-- several is the most recently written, rather than the one with the greatest random id. Addresses have no
+-- timestamp, so the row kept is the one with the highest ctid, where Postgres puts each new insert or update while
+-- the table is not vacuumed. Databases that already applied V3 have no duplicates left and skip this migration
+-- (spring.flyway.ignore-migration-patterns).
+DELETE FROM addresses
+WHERE ctid IN (SELECT ctid
+               FROM (SELECT ctid, row_number() OVER (PARTITION BY user_id ORDER BY ctid DESC) AS position
+                     FROM addresses) AS ranked
+               WHERE position > 1);
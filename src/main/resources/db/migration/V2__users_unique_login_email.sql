@@ -0,0 +1,3 @@
+CREATE UNIQUE INDEX IF NOT EXISTS users_login_unique_idx ON users (lower(login));
+
+CREATE UNIQUE INDEX IF NOT EXISTS users_email_unique_idx ON users (lower(email));
@@ -0,0 +1,8 @@
+-- A user has at most one address. Keep a single one for any user that ended up with more,
+-- so that the unique index can be created and addresses can be upserted on user_id.
+DELETE FROM addresses a
+USING addresses b
+WHERE a.user_id = b.user_id
+  AND a.id < b.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS addresses_user_id_unique_idx ON addresses (user_id);
@@ -0,0 +1,11 @@
+-- Responses to create requests, stored under the Idempotency-Key the client sent so that a retry gets the same response.
+-- A row without a response belongs to a request still in progress, which another one may take over after locked_until.
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    idempotency_key VARCHAR(255) PRIMARY KEY,
+    fingerprint VARCHAR(64) NOT NULL,
+    response TEXT,
+    locked_until TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idempotency_keys_expires_at_idx ON idempotency_keys (expires_at);
@@ -0,0 +1,3 @@
+-- The request that holds the lock of a key, so that one whose lease expired cannot complete or release a key
+-- another request has taken over.
+ALTER TABLE idempotency_keys ADD COLUMN IF NOT EXISTS locked_by UUID;
@@ -0,0 +1,80 @@
+package app.jaba.caches;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    private static final int ENTRIES = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void neverMissesAnAddedValue() {
+        var filter = new BloomFilter(ENTRIES, FALSE_POSITIVE_RATE);
+        var values = values(ENTRIES);
+
+        values.forEach(filter::add);
+
+        assertThat(values).allMatch(filter::mightContain);
+    }
+
+    @Test
+    void neverMissesAValueAddedConcurrently() throws Exception {
+        var filter = new BloomFilter(ENTRIES, FALSE_POSITIVE_RATE);
+        int threads = 8;
+        List<List<String>> values = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            values.add(values(ENTRIES / threads));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> adds = new ArrayList<>();
+            for (List<String> slice : values) {
+                adds.add(executor.submit(() -> slice.forEach(filter::add)));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        values.forEach(slice -> assertThat(slice).allMatch(filter::mightContain));
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheRateItWasSizedFor() {
+        var filter = new BloomFilter(ENTRIES, FALSE_POSITIVE_RATE);
+        values(ENTRIES).forEach(filter::add);
+
+        long falsePositives = values(ENTRIES).stream().filter(filter::mightContain).count();
+
+        assertThat((double) falsePositives / ENTRIES).isLessThan(2 * FALSE_POSITIVE_RATE);
+        assertThat(filter.expectedFalsePositiveRate()).isLessThan(2 * FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    void rulesOutEverythingWhenEmpty() {
+        var filter = new BloomFilter(ENTRIES, FALSE_POSITIVE_RATE);
+
+        assertThat(values(1_000)).noneMatch(filter::mightContain);
+        assertThat(filter.expectedFalsePositiveRate()).isZero();
+    }
+
+    private static List<String> values(int count) {
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add("login:" + UUID.randomUUID());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,172 @@
+package app.jaba.caches;
+
+import app.jaba.entities.UserEntity;
+import app.jaba.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserAvailabilityFilterTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    List<UserEntity> table = new CopyOnWriteArrayList<>();
+    UserRepository userRepository = mock(UserRepository.class);
+    @SuppressWarnings("unchecked")
+    ObjectProvider<UserChangeListener> changeListener = mock(ObjectProvider.class);
+    UserAvailabilityFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            Consumer<UserEntity> action = invocation.getArgument(1);
+            table.forEach(action);
+            return null;
+        }).when(userRepository).streamAll(anyInt(), any());
+        when(userRepository.count()).thenAnswer(invocation -> (long) table.size());
+        when(changeListener.getIfAvailable()).thenReturn(mock(UserChangeListener.class));
+
+        filter = new UserAvailabilityFilter(true, 10_000, 0.01, 1000, userRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), changeListener, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        filter.stop();
+    }
+
+    @Test
+    void checksTheDatabaseUntilBuilt() {
+        filter.start();
+        var lookups = new AtomicInteger();
+
+        boolean inUse = filter.isLoginInUse("roberto", counting(lookups, false));
+
+        assertThat(inUse).isFalse();
+        assertThat(lookups).hasValue(1);
+        verify(userRepository, never()).streamAll(anyInt(), any());
+    }
+
+    @Test
+    void staysDisabledWithoutTheChangeListener() {
+        when(changeListener.getIfAvailable()).thenReturn(null);
+        table.add(user("roberto"));
+
+        filter.start();
+        var lookups = new AtomicInteger();
+
+        assertThat(filter.isLoginInUse("maria", counting(lookups, true))).isTrue();
+        assertThat(filter.mightHaveEmail("maria@jaba.com")).isTrue();
+        assertThat(lookups).hasValue(1);
+        verify(userRepository, never()).streamAll(anyInt(), any());
+    }
+
+    @Test
+    void neverRulesOutAValueInUse() {
+        for (int i = 0; i < 10_000; i++) {
+            table.add(user("user" + i));
+        }
+        build();
+
+        for (UserEntity user : table) {
+            assertThat(filter.isLoginInUse(user.getLogin().toUpperCase(), login -> true)).isTrue();
+            assertThat(filter.isEmailInUse(user.getEmail(), email -> true)).isTrue();
+        }
+    }
+
+    @Test
+    void rulesOutValuesNobodyUsesWithoutQuerying() {
+        table.add(user("roberto"));
+        build();
+        var lookups = new AtomicInteger();
+
+        assertThat(filter.isLoginInUse("maria", counting(lookups, true))).isFalse();
+        assertThat(filter.isEmailInUse("maria@jaba.com", counting(lookups, true))).isFalse();
+        assertThat(lookups).hasValue(0);
+    }
+
+    @Test
+    void addsUsersSavedOnThisNode() {
+        build();
+
+        filter.add(user("maria"));
+
+        assertThat(filter.mightHaveLogin("Maria")).isTrue();
+        assertThat(filter.mightHaveEmail("MARIA@jaba.com")).isTrue();
+    }
+
+    @Test
+    void addsUsersChangedOnOtherNodes() {
+        build();
+        var maria = user("maria");
+        when(userRepository.findAllByIds(List.of(maria.getId()))).thenReturn(List.of(maria));
+
+        filter.onUsersChanged(List.of(maria.getId()));
+
+        await(() -> filter.mightHaveLogin("maria"));
+        assertThat(filter.mightHaveEmail("maria@jaba.com")).isTrue();
+    }
+
+    @Test
+    void rebuildsWhenChangedUsersCannotBeRead() {
+        build();
+        var maria = user("maria");
+        table.add(maria);
+        when(userRepository.findAllByIds(anyCollection())).thenThrow(new DataAccessResourceFailureException("Down"));
+
+        filter.onUsersChanged(List.of(maria.getId()));
+
+        await(() -> filter.mightHaveLogin("maria"));
+        assertThat(filter.mightHaveEmail("maria@jaba.com")).isTrue();
+    }
+
+    private void build() {
+        filter.start();
+        filter.onChangesMissed();
+        await(() -> !filter.mightHaveLogin("nobody"));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition met in time").isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private static Predicate<String> counting(AtomicInteger lookups, boolean inUse) {
+        return value -> {
+            lookups.incrementAndGet();
+            return inUse;
+        };
+    }
+
+    private static UserEntity user(String login) {
+        return new UserEntity(UUID.randomUUID(), login, login, login + "@jaba.com", "password", null, null);
+    }
+}
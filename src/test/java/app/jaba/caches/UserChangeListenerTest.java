@@ -0,0 +1,147 @@
+package app.jaba.caches;
+
+import app.jaba.repositories.UserChangeNotifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.abort;
+
+/**
+ * Runs the listener against a Postgres database, given by {@code TEST_DATABASE_URL}, {@code TEST_DATABASE_USER} and
+ * {@code TEST_DATABASE_PASSWORD} (the Docker Compose one by default). Skipped when the database cannot be reached.
+ */
+class UserChangeListenerTest {
+
+    private static final String APPLICATION_NAME = "user-change-listener-test";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    DataSourceProperties dataSourceProperties = new DataSourceProperties();
+    RecordingSubscriber recording = new RecordingSubscriber();
+    FailingSubscriber failing = new FailingSubscriber();
+    UserChangeNotifier notifier;
+    JdbcClient jdbcClient;
+    UserChangeListener listener;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        var url = System.getenv().getOrDefault("TEST_DATABASE_URL", "jdbc:postgresql://localhost:5432/jaba");
+        dataSourceProperties.setUrl(url + (url.contains("?") ? "&" : "?") + "ApplicationName=" + APPLICATION_NAME);
+        dataSourceProperties.setUsername(System.getenv().getOrDefault("TEST_DATABASE_USER", "user"));
+        dataSourceProperties.setPassword(System.getenv().getOrDefault("TEST_DATABASE_PASSWORD", "password"));
+        try (Connection ignored = DriverManager.getConnection(dataSourceProperties.getUrl(),
+                dataSourceProperties.getUsername(), dataSourceProperties.getPassword())) {
+            // Reachable.
+        } catch (SQLException e) {
+            abort("No Postgres database at " + url + ": " + e.getMessage());
+        }
+
+        jdbcClient = JdbcClient.create(new DriverManagerDataSource(url,
+                dataSourceProperties.getUsername(), dataSourceProperties.getPassword()));
+        notifier = new UserChangeNotifier(jdbcClient);
+        // The failing subscriber comes first, so the recording one only hears of changes if the listener moves on.
+        listener = new UserChangeListener(dataSourceProperties, List.of(failing, recording),
+                Duration.ofMillis(50), Duration.ofMillis(100));
+        listener.start();
+        awaitConnected();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    void notifiesTheOtherSubscribersWhenOneFails() throws InterruptedException {
+        var userId = UUID.randomUUID();
+
+        notifier.notifyChanged(userId);
+
+        assertThat(recording.changes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo(userId);
+        assertThat(failing.calls.get()).isPositive();
+    }
+
+    @Test
+    void keepsListeningAfterASubscriberFails() throws InterruptedException {
+        var first = UUID.randomUUID();
+        var second = UUID.randomUUID();
+
+        notifier.notifyChanged(first);
+        assertThat(recording.changes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo(first);
+        notifier.notifyChanged(second);
+
+        assertThat(recording.changes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo(second);
+        assertThat(listener.isRunning()).isTrue();
+    }
+
+    @Test
+    void reconnectsAndReportsMissedChangesWhenTheConnectionDrops() throws InterruptedException {
+        jdbcClient.sql("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE application_name = :name")
+                .param("name", APPLICATION_NAME)
+                .query()
+                .listOfRows();
+
+        awaitConnected();
+        var userId = UUID.randomUUID();
+        notifier.notifyChanged(List.of(userId));
+
+        assertThat(recording.changes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo(userId);
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        assertThat(recording.connections.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                .as("listener connected")
+                .isTrue();
+    }
+
+    private static class RecordingSubscriber implements UserChangeSubscriber {
+
+        final BlockingQueue<UUID> changes = new LinkedBlockingQueue<>();
+        final Semaphore connections = new Semaphore(0);
+
+        @Override
+        public void onUserChanged(UUID userId) {
+            changes.add(userId);
+        }
+
+        @Override
+        public void onChangesMissed() {
+            connections.release();
+        }
+    }
+
+    private static class FailingSubscriber implements UserChangeSubscriber {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void onUserChanged(UUID userId) {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Subscriber failure");
+        }
+
+        @Override
+        public void onChangesMissed() {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Subscriber failure");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package app.jaba.controllers;
+
+import app.jaba.exceptions.PreconditionFailedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserETagsTest {
+
+    private static final LocalDateTime FIRST = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000);
+    private static final LocalDateTime SECOND = LocalDateTime.of(2024, 5, 2, 11, 30, 15, 654_321_000);
+
+    @Test
+    void setsNoConditionWithoutTheHeader() {
+        assertThat(UserETags.parseIfMatch(null)).isNull();
+        assertThat(UserETags.parseIfMatch("  ")).isNull();
+    }
+
+    @Test
+    void acceptsAnyVersionForAnAsterisk() {
+        assertThat(UserETags.parseIfMatch("*")).isEmpty();
+        assertThat(UserETags.parseIfMatch(" * ")).isEmpty();
+    }
+
+    @Test
+    void readsBackTheLastUpdateOfATag() {
+        assertThat(UserETags.parseIfMatch(UserETags.of(FIRST))).containsExactly(FIRST);
+    }
+
+    @Test
+    void readsEveryTagOfAList() {
+        var ifMatch = UserETags.of(FIRST) + ", " + UserETags.of(SECOND);
+
+        assertThat(UserETags.parseIfMatch(ifMatch)).containsExactly(FIRST, SECOND);
+    }
+
+    @Test
+    void leavesOutTagsOfAListThatCannotMatch() {
+        var ifMatch = "W/" + UserETags.of(FIRST) + ",\"not-hex\"," + UserETags.of(SECOND);
+
+        assertThat(UserETags.parseIfMatch(ifMatch)).containsExactly(SECOND);
+    }
+
+    @Test
+    void failsThePreconditionWhenNoTagCanMatch() {
+        assertThatThrownBy(() -> UserETags.parseIfMatch("W/" + UserETags.of(FIRST) + ", \"not-hex\""))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+}
@@ -0,0 +1,89 @@
+package app.jaba.services;
+
+import app.jaba.caches.CredentialsCache;
+import app.jaba.caches.UserAvailabilityFilter;
+import app.jaba.caches.UserCache;
+import app.jaba.entities.UserEntity;
+import app.jaba.entities.UserPatchEntity;
+import app.jaba.exceptions.PreconditionFailedException;
+import app.jaba.exceptions.UserNotFoundException;
+import app.jaba.passwords.PasswordHasher;
+import app.jaba.repositories.UserRepository;
+import app.jaba.services.validations.PageAndSizeValidation;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The If-Match preconditions of writes, with the repository and caches mocked.
+ */
+class UserServiceTest {
+
+    private static final UUID ID = UUID.randomUUID();
+    private static final LocalDateTime FIRST = LocalDateTime.of(2024, 5, 1, 10, 0);
+    private static final LocalDateTime SECOND = LocalDateTime.of(2024, 5, 2, 11, 30);
+
+    UserRepository userRepository = mock(UserRepository.class);
+    UserCache userCache = mock(UserCache.class);
+    UserService userService = new UserService(userRepository, userCache, mock(CredentialsCache.class),
+            mock(UserAvailabilityFilter.class), mock(AddressService.class), List.of(), List.of(),
+            mock(PageAndSizeValidation.class), List.of(), List.of(), mock(PasswordHasher.class),
+            mock(TransactionTemplate.class));
+
+    @Test
+    void failsThePreconditionOfAnyVersionWhenTheUserDoesNotExist() {
+        when(userRepository.deleteById(ID, List.of())).thenReturn(false);
+
+        assertThatThrownBy(() -> userService.deleteById(ID, List.of()))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void failsThePreconditionOfATagWhenTheUserDoesNotExist() {
+        when(userRepository.deleteById(ID, List.of(FIRST))).thenReturn(false);
+
+        assertThatThrownBy(() -> userService.deleteById(ID, List.of(FIRST)))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void reportsAMissingUserWithoutIfMatch() {
+        when(userRepository.deleteById(ID, null)).thenReturn(false);
+
+        assertThatThrownBy(() -> userService.deleteById(ID, null))
+                .isInstanceOf(UserNotFoundException.class);
+    }
+
+    @Test
+    void failsThePreconditionOfAnyVersionOnAnEmptyPatchOfAMissingUser() {
+        when(userCache.get(eq(ID), any())).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> userService.patch(ID, new UserPatchEntity(), List.of()))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void matchesAnyTagOfAListOnAnEmptyPatch() {
+        var user = user(SECOND);
+        when(userCache.get(eq(ID), any())).thenReturn(Optional.of(user));
+
+        assertThat(userService.patch(ID, new UserPatchEntity(), List.of(FIRST, SECOND))).isSameAs(user);
+        assertThatThrownBy(() -> userService.patch(ID, new UserPatchEntity(), List.of(FIRST)))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    private static UserEntity user(LocalDateTime lastUpdate) {
+        return new UserEntity(ID, "Roberto Carlos", "roberto", "roberto@jaba.com", "password", lastUpdate, null);
+    }
+}
@@ -0,0 +1,71 @@
+package app.jaba.validators;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailValidatorTest {
+
+    /**
+     * The regular expression {@link EmailValidator} replaced, which it must agree with on every input.
+     */
+    private static final Pattern PATTERN = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$");
+
+    private static final List<String> EDGE_CASES = List.of(
+            "roberto.carlos@jaba.com", "ROBERTO+tag@Jaba.COM", "a@b.co", "a%b_c-d@sub.domain.example.museum",
+            "", "@", "a@", "@b.co", "a@b", "a@b.", "a@.co", "a@b.c", "a@b.comcomc", "a@b.c0m", "a@@b.co",
+            "a@b@c.co", "a b@c.co", "a@b_c.co", "a@b.co ", " a@b.co", "a@b..co", "a@-.co", "a@..co", "a@b.co.",
+            "a@b.co.uk", "a@1.2.3.abc", "é@b.co", "a@b.çom", "a@b.co\n", "a.@b.co", ".@..ab", "a@b.-co");
+    private static final char[] ALPHABET = "aZ09._%+-@ .é".toCharArray();
+
+    EmailValidator emailValidator = new EmailValidator();
+
+    @Test
+    void agreesWithTheRegularExpressionOnEdgeCases() {
+        assertAgreesWithPattern(EDGE_CASES);
+    }
+
+    @Test
+    void agreesWithTheRegularExpressionOnRandomStrings() {
+        // Random strings of the characters that matter to the format, alone and as the domain of an address.
+        var random = new Random(42);
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            var email = new StringBuilder();
+            int length = 1 + random.nextInt(15);
+            for (int j = 0; j < length; j++) {
+                email.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            emails.add(email.toString());
+            emails.add("user" + i + "@" + email + ".com");
+        }
+
+        assertAgreesWithPattern(emails);
+    }
+
+    @Test
+    void rejectsNull() {
+        assertThat(emailValidator.isValid(null)).isFalse();
+    }
+
+    @Test
+    void normalizeTrimsAndLowerCasesTheDomainOnly() {
+        assertThat(emailValidator.normalize("  Roberto.Carlos@Jaba.COM\t")).isEqualTo("Roberto.Carlos@jaba.com");
+        assertThat(emailValidator.normalize("roberto@jaba.com")).isEqualTo("roberto@jaba.com");
+        assertThat(emailValidator.normalize("no-at-sign")).isEqualTo("no-at-sign");
+        assertThat(emailValidator.normalize(null)).isNull();
+    }
+
+    private void assertAgreesWithPattern(List<String> emails) {
+        for (String email : emails) {
+            assertThat(emailValidator.isValid(email))
+                    .as("'%s'", email)
+                    .isEqualTo(PATTERN.matcher(email).matches());
+        }
+    }
+}